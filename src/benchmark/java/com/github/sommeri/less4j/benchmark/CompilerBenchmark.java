@@ -0,0 +1,56 @@
+package com.github.sommeri.less4j.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.sommeri.less4j.Less4jException;
+import com.github.sommeri.less4j.LessCompiler;
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.benchmark.Corpus.Sheet;
+import com.github.sommeri.less4j.core.DefaultLessCompiler;
+
+/**
+ * Measures whole compilation from less source to css through public api, including
+ * reading of files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompilerBenchmark {
+
+  @Param(Corpus.LESS_JS)
+  public String corpus;
+
+  private List<Sheet> sheets;
+  private LessCompiler compiler = new DefaultLessCompiler();
+
+  @Setup(Level.Trial)
+  public void loadCorpus() {
+    sheets = new Corpus(corpus).getSheets();
+  }
+
+  @Benchmark
+  public void compile(Blackhole blackhole) throws Less4jException {
+    for (Sheet sheet : sheets) {
+      blackhole.consume(compiler.compile(sheet.getSource(), new Configuration()));
+    }
+  }
+
+}
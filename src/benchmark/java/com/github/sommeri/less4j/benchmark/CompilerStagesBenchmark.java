@@ -0,0 +1,157 @@
+package com.github.sommeri.less4j.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.benchmark.Corpus.Sheet;
+import com.github.sommeri.less4j.core.ast.StyleSheet;
+import com.github.sommeri.less4j.core.compiler.LessToCssCompiler;
+import com.github.sommeri.less4j.core.problems.ProblemsHandler;
+
+/**
+ * Measures stages of {@link LessToCssCompiler#compileToCss(StyleSheet, LessSource, Configuration)}
+ * one by one. Before each invocation, all stages that precede the measured one run on
+ * freshly cloned abstract syntax trees, so the measured stage always gets the same input
+ * it would get in real compilation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompilerStagesBenchmark {
+
+  public enum Stage {
+    IMPORTS_AND_REFERENCES {
+      @Override
+      protected void run(Compilation compilation) {
+        compilation.compiler.resolveImportsAndReferences(compilation.less, compilation.source);
+      }
+    },
+    EVALUATION {
+      @Override
+      protected void run(Compilation compilation) {
+        compilation.compiler.evaluateExpressions(compilation.less);
+      }
+    },
+    UN_NESTING {
+      @Override
+      protected void run(Compilation compilation) {
+        compilation.compiler.freeNestedRulesetsAndMedia(compilation.less);
+      }
+    },
+    EXTENDS {
+      @Override
+      protected void run(Compilation compilation) {
+        compilation.compiler.solveExtends(compilation.less);
+      }
+    },
+    MEDIA_BUBBLING {
+      @Override
+      protected void run(Compilation compilation) {
+        compilation.compiler.finalMediaMergingAndBubbling(compilation.less);
+      }
+    },
+    MERGING {
+      @Override
+      protected void before(Compilation compilation) {
+        compilation.compiler.removeUselessLessElements(compilation.less);
+        compilation.compiler.removeEmptyRulesetsAndMedia(compilation.less);
+      }
+
+      @Override
+      protected void run(Compilation compilation) {
+        compilation.compiler.finishDeclarations(compilation.less);
+      }
+    };
+
+    /**
+     * Unmeasured clean up steps compiler does between previous stage and this
+     * one.
+     */
+    protected void before(Compilation compilation) {
+    }
+
+    protected abstract void run(Compilation compilation);
+
+    public void prepare(Compilation compilation) {
+      for (Stage stage : values()) {
+        stage.before(compilation);
+        if (stage == this)
+          return;
+        stage.run(compilation);
+      }
+    }
+
+  }
+
+  @Param(Corpus.LESS_JS)
+  public String corpus;
+
+  @Param
+  public Stage stage;
+
+  private List<StyleSheet> parsed = new ArrayList<StyleSheet>();
+  private List<Sheet> sheets;
+  private List<Compilation> compilations;
+
+  @Setup(Level.Trial)
+  public void loadCorpus() {
+    sheets = new Corpus(corpus).getSheets();
+    for (Sheet sheet : sheets) {
+      parsed.add(sheet.parse());
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void prepareStage() {
+    compilations = new ArrayList<Compilation>();
+    for (int i = 0; i < sheets.size(); i++) {
+      StyleSheet less = parsed.get(i).clone();
+      less.configureParentToAllChilds();
+      Compilation compilation = new Compilation(less, sheets.get(i).getSource());
+      stage.prepare(compilation);
+      compilations.add(compilation);
+    }
+  }
+
+  @Benchmark
+  public List<Compilation> stage() {
+    for (Compilation compilation : compilations) {
+      stage.run(compilation);
+    }
+    return compilations;
+  }
+
+  public static class Compilation {
+
+    private final LessToCssCompiler compiler;
+    private final StyleSheet less;
+    private final LessSource source;
+
+    public Compilation(StyleSheet less, LessSource source) {
+      this.compiler = new LessToCssCompiler(new ProblemsHandler(), new Configuration());
+      this.less = less;
+      this.source = source;
+    }
+
+  }
+
+}
@@ -0,0 +1,115 @@
+package com.github.sommeri.less4j.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.sommeri.less4j.Less4jException;
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.LessSource.CannotReadFile;
+import com.github.sommeri.less4j.LessSource.FileNotFound;
+import com.github.sommeri.less4j.LessSource.FileSource;
+import com.github.sommeri.less4j.core.ThreadUnsafeLessCompiler;
+import com.github.sommeri.less4j.core.ast.StyleSheet;
+import com.github.sommeri.less4j.core.parser.ANTLRParser;
+import com.github.sommeri.less4j.core.parser.ASTBuilder;
+import com.github.sommeri.less4j.core.problems.ProblemsHandler;
+
+/**
+ * Set of less files benchmarks run on. Corpus is either a single less file or a
+ * directory - all less files directly inside it are used. Files that do not
+ * compile without errors are skipped, benchmarks measure only successful
+ * compilations.
+ * 
+ * Paths are relative to project root directory. Use jmh <code>-p corpus=path</code>
+ * option to run benchmarks on other files e.g., on bootstrap.less from bootstrap
+ * checkout.
+ */
+public class Corpus {
+
+  public static final String LESS_JS = "src/test/resources/less.js-v1.3.3/less";
+
+  private final List<Sheet> sheets = new ArrayList<Sheet>();
+
+  public Corpus(String path) {
+    for (File file : listLessFiles(new File(path))) {
+      FileSource source = new FileSource(file);
+      if (compiles(source)) {
+        sheets.add(new Sheet(source, readContent(source)));
+      }
+    }
+    if (sheets.isEmpty())
+      throw new IllegalArgumentException("No compilable less file found in " + path);
+  }
+
+  public List<Sheet> getSheets() {
+    return sheets;
+  }
+
+  private List<File> listLessFiles(File path) {
+    if (!path.isDirectory())
+      return Arrays.asList(path);
+
+    File[] files = path.listFiles();
+    Arrays.sort(files);
+    List<File> result = new ArrayList<File>();
+    for (File file : files) {
+      if (file.isFile() && file.getName().endsWith(".less"))
+        result.add(file);
+    }
+    return result;
+  }
+
+  private boolean compiles(FileSource source) {
+    try {
+      new ThreadUnsafeLessCompiler().compile(source, new Configuration());
+      return true;
+    } catch (Less4jException ex) {
+      return false;
+    }
+  }
+
+  private String readContent(FileSource source) {
+    try {
+      return source.getContent();
+    } catch (FileNotFound ex) {
+      throw new IllegalArgumentException("File not found " + source, ex);
+    } catch (CannotReadFile ex) {
+      throw new IllegalArgumentException("Can not read " + source, ex);
+    }
+  }
+
+  public static class Sheet {
+
+    private final LessSource source;
+    private final String content;
+
+    public Sheet(LessSource source, String content) {
+      this.source = source;
+      this.content = content;
+    }
+
+    public LessSource getSource() {
+      return source;
+    }
+
+    public String getContent() {
+      return content;
+    }
+
+    /**
+     * Parses the sheet into less abstract syntax tree. Each call returns new
+     * independent tree.
+     */
+    public StyleSheet parse() {
+      ANTLRParser.ParseResult parsed = new ANTLRParser().parseStyleSheet(content, source);
+      StyleSheet result = new ASTBuilder(new ProblemsHandler()).parseStyleSheet(parsed.getTree());
+      result.configureParentToAllChilds();
+      return result;
+    }
+
+  }
+
+}
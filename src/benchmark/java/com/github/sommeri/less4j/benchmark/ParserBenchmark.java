@@ -0,0 +1,86 @@
+package com.github.sommeri.less4j.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.sommeri.less4j.benchmark.Corpus.Sheet;
+import com.github.sommeri.less4j.core.parser.ANTLRParser;
+import com.github.sommeri.less4j.core.parser.ASTBuilder;
+import com.github.sommeri.less4j.core.parser.HiddenTokenAwareTree;
+import com.github.sommeri.less4j.core.problems.ProblemsHandler;
+
+/**
+ * Measures both parsing phases: antlr parsing into {@link HiddenTokenAwareTree}
+ * and conversion of that tree into less abstract syntax tree. Each operation
+ * processes whole corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+  @Param(Corpus.LESS_JS)
+  public String corpus;
+
+  private List<Sheet> sheets;
+
+  @Setup(Level.Trial)
+  public void loadCorpus() {
+    sheets = new Corpus(corpus).getSheets();
+  }
+
+  @Benchmark
+  public void antlrParser(Blackhole blackhole) {
+    ANTLRParser parser = new ANTLRParser();
+    for (Sheet sheet : sheets) {
+      blackhole.consume(parser.parseStyleSheet(sheet.getContent(), sheet.getSource()));
+    }
+  }
+
+  @Benchmark
+  public void astBuilder(AntlrTrees trees, Blackhole blackhole) {
+    for (HiddenTokenAwareTree tree : trees.trees) {
+      ASTBuilder builder = new ASTBuilder(new ProblemsHandler());
+      blackhole.consume(builder.parseStyleSheet(tree));
+    }
+  }
+
+  /**
+   * Ast builder moves hidden tokens around, so each invocation needs freshly
+   * parsed trees.
+   */
+  @State(Scope.Thread)
+  public static class AntlrTrees {
+
+    private List<HiddenTokenAwareTree> trees;
+
+    @Setup(Level.Invocation)
+    public void parse(ParserBenchmark benchmark) {
+      ANTLRParser parser = new ANTLRParser();
+      trees = new ArrayList<HiddenTokenAwareTree>();
+      for (Sheet sheet : benchmark.sheets) {
+        trees.add(parser.parseStyleSheet(sheet.getContent(), sheet.getSource()).getTree());
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,87 @@
+package com.github.sommeri.less4j.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.benchmark.Corpus.Sheet;
+import com.github.sommeri.less4j.core.ast.ASTCssNode;
+import com.github.sommeri.less4j.core.compiler.LessToCssCompiler;
+import com.github.sommeri.less4j.core.problems.ProblemsHandler;
+import com.github.sommeri.less4j.platform.Constants;
+import com.github.sommeri.less4j.utils.CssPrinter;
+import com.github.sommeri.less4j.utils.URIUtils;
+
+/**
+ * Measures conversion of compiled css abstract syntax trees into css and
+ * source map.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrinterBenchmark {
+
+  @Param(Corpus.LESS_JS)
+  public String corpus;
+
+  private List<Printable> printables = new ArrayList<Printable>();
+
+  @Setup(Level.Trial)
+  public void compileCorpus() {
+    for (Sheet sheet : new Corpus(corpus).getSheets()) {
+      LessToCssCompiler compiler = new LessToCssCompiler(new ProblemsHandler(), new Configuration());
+      ASTCssNode css = compiler.compileToCss(sheet.parse(), sheet.getSource(), new Configuration());
+      printables.add(new Printable(sheet.getSource(), css, compiler.getImportedsources()));
+    }
+  }
+
+  @Benchmark
+  public void cssPrinter(Blackhole blackhole) {
+    for (Printable printable : printables) {
+      CssPrinter printer = new CssPrinter(printable.source, printable.cssDestination, Collections.<LessSource> emptyList(), printable.importedSources, printable.configuration);
+      printer.append(printable.css);
+      blackhole.consume(printer.toCss());
+      blackhole.consume(printer.toSourceMap());
+    }
+  }
+
+  private static class Printable {
+
+    private final LessSource source;
+    private final LessSource cssDestination;
+    private final ASTCssNode css;
+    private final List<LessSource> importedSources;
+    private final Configuration configuration = new Configuration();
+
+    public Printable(LessSource source, ASTCssNode css, Collection<LessSource> importedSources) {
+      this.source = source;
+      this.css = css;
+      this.importedSources = new ArrayList<LessSource>(importedSources);
+      String cssName = URIUtils.changeSuffix(source.getName(), Constants.CSS_SUFFIX);
+      this.cssDestination = new LessSource.StringSource("", cssName, URIUtils.changeSuffix(source.getURI(), Constants.CSS_SUFFIX));
+    }
+
+  }
+
+}
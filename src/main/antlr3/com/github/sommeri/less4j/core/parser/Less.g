@@ -132,6 +132,16 @@ tokens {
       this.source = source;
     }
 
+    /**
+     * Prepares the lexer for new input, so it can be reused.
+     */
+    public void reset(LessSource source, CharStream input, List<Problem> errors) {
+      tokens.clear();
+      this.errors = errors;
+      this.source = source;
+      setCharStream(input);
+    }
+
   protected LexerLogic lexerLogic = new LexerLogic();
 
   //This trick allow Lexer to emit multiple tokens per one rule.
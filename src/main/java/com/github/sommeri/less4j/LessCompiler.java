@@ -10,6 +10,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public interface LessCompiler {
 
@@ -41,6 +42,27 @@ public interface LessCompiler {
     private EmbeddedScriptGenerator embeddedScriptGenerator;
     private boolean compressing = false;
     private Cache cache;
+    private Executor importExecutor;
+    private boolean detachParseTrees = false;
+
+    public Configuration() {
+    }
+
+    /**
+     * Creates copy of the configuration. Custom functions and external variables are copied into
+     * new collections, source map configuration, cache and executors are shared with the original.
+     */
+    public Configuration(Configuration configuration) {
+      cssResultLocation = configuration.cssResultLocation;
+      sourceMapConfiguration = configuration.sourceMapConfiguration;
+      functionPackages.addAll(configuration.functionPackages);
+      externalVariables.putAll(configuration.externalVariables);
+      embeddedScriptGenerator = configuration.embeddedScriptGenerator;
+      compressing = configuration.compressing;
+      cache = configuration.cache;
+      importExecutor = configuration.importExecutor;
+      detachParseTrees = configuration.detachParseTrees;
+    }
 
     /**
      * This is needed in for source map.
@@ -128,6 +150,39 @@ public interface LessCompiler {
       return this;
     }
 
+    public Executor getImportExecutor() {
+      return importExecutor;
+    }
+
+    /**
+     * Imported files are read and parsed on this executor concurrently. Imports are still 
+     * applied in the original order, so the result is the same as without it. Only imports
+     * with url that does not contain variables are read in advance. Files used by data-uri and
+     * image size functions are read in advance too. If the executor is <code>null</code>, 
+     * imported files are read and parsed one by one. 
+     * 
+     * Cache set by {@link #setCache(Cache)} must be thread safe if the executor is set.  
+     */
+    public Configuration setImportExecutor(Executor importExecutor) {
+      this.importExecutor = importExecutor;
+      return this;
+    }
+
+    public boolean isDetachParseTrees() {
+      return detachParseTrees;
+    }
+
+    /**
+     * If set to <code>true</code>, parsed sheets do not keep their ANTLR parse trees. Each node
+     * remembers only its source, line and column, which is enough for error messages and 
+     * source maps. Use it to keep more trees in {@link #setCache(Cache)} within the same heap.
+     * It is <code>false</code> by default.
+     */
+    public Configuration setDetachParseTrees(boolean detachParseTrees) {
+      this.detachParseTrees = detachParseTrees;
+      return this;
+    }
+
   }
 
   public static class SourceMapConfiguration {
@@ -256,6 +311,13 @@ public interface LessCompiler {
    * Cache with objects to be reused between runs. Use this to speed up compilation
    * when you multiple sheets import and use the same less files. Use with caution, 
    * may cause faults if imported data change between consecutive runs.   
+   * 
+   * {@link com.github.sommeri.less4j.core.BoundedAstCache} is thread safe implementation 
+   * with limited size that drops entries of changed files.
+   * 
+   * Compiler does not read content of sources that have cached ast, the cache is responsible
+   * for checking whether they changed. Use {@link LessSource.AbstractHierarchicalSource#getFingerprint()}
+   * to do that without reading them.
    *
    */
   public interface Cache {
@@ -271,6 +333,22 @@ public interface LessCompiler {
     void setAst(LessSource key, Object value);
   }
 
+  /**
+   * Cache that validates entries by content of their sources. Compiler passes it the exact
+   * content the ast was parsed from, so the cache does not have to read the source again -
+   * the source may have changed since it was parsed.
+   *
+   */
+  public interface ContentAwareCache extends Cache {
+
+    /**
+     * Set ast corresponding to parsed source.
+     *
+     * @param content content the ast was parsed from
+     */
+    void setAst(LessSource key, String content, Object value);
+  }
+
   public interface Problem {
 
     public Type getType();
@@ -1,23 +1,23 @@
 package com.github.sommeri.less4j;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.Executor;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
+import com.github.sommeri.less4j.utils.ContentDecoder;
 import com.github.sommeri.less4j.utils.URIUtils;
 
 public abstract class LessSource {
@@ -28,6 +28,57 @@ public abstract class LessSource {
 
   public abstract byte[] getBytes() throws FileNotFound, CannotReadFile;
 
+  /**
+   * Starts reading of source content and returns immediately. The callback is called exactly
+   * once, either with the content or with {@link FileNotFound} or {@link CannotReadFile}.
+   * 
+   * Default implementation runs {@link #getContent()} on the executor. Sources able to read
+   * without blocking a thread, e.g., using asynchronous http client, should override it and
+   * call the callback from their own threads.
+   * 
+   * @param executor executor for blocking reads
+   */
+  public void getContentAsync(Executor executor, final ReadCallback<String> callback) {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        String content;
+        try {
+          content = getContent();
+        } catch (FileNotFound ex) {
+          callback.failed(ex);
+          return;
+        } catch (CannotReadFile ex) {
+          callback.failed(ex);
+          return;
+        }
+        callback.finished(content);
+      }
+    });
+  }
+
+  /**
+   * Asynchronous version of {@link #getBytes()}, works the same way as {@link #getContentAsync(Executor, ReadCallback)}. 
+   */
+  public void getBytesAsync(Executor executor, final ReadCallback<byte[]> callback) {
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        byte[] bytes;
+        try {
+          bytes = getBytes();
+        } catch (FileNotFound ex) {
+          callback.failed(ex);
+          return;
+        } catch (CannotReadFile ex) {
+          callback.failed(ex);
+          return;
+        }
+        callback.finished(bytes);
+      }
+    });
+  }
+
   /**
    * @return less source location uri or <code>null</code>. If non-null, last path part must be equal to whatever {@link #getName()} returns.
    * 
@@ -43,6 +94,21 @@ public abstract class LessSource {
     return null;
   }
 
+  /**
+   * @return charset of the given name or platform default charset if the name is <code>null</code> 
+   * @throws CannotReadFile if the charset is not supported
+   */
+  protected static Charset toCharset(String charsetName) throws CannotReadFile {
+    if (charsetName == null)
+      return Charset.defaultCharset();
+
+    try {
+      return Charset.forName(charsetName);
+    } catch (IllegalArgumentException ex) {
+      throw new CannotReadFile();
+    }
+  }
+
   public abstract static class AbstractHierarchicalSource extends LessSource {
 
     protected AbstractHierarchicalSource parent;
@@ -53,6 +119,8 @@ public abstract class LessSource {
 
     protected Collection<LessSource> importedSources;
 
+    protected Fingerprint contentFingerprint;
+
     public AbstractHierarchicalSource() {
       super();
 
@@ -69,7 +137,8 @@ public abstract class LessSource {
       setLatestModified(lastModified);
     }
 
-    protected void addImportedSource(LessSource source) {
+    // imports may be prefetched concurrently
+    protected synchronized void addImportedSource(LessSource source) {
       if (parent != null) {
         parent.addImportedSource(source);
       } else {
@@ -89,7 +158,33 @@ public abstract class LessSource {
       return latestModified;
     }
 
-    public void setLatestModified(long latestModified) {
+    /**
+     * Finds out current modification time and size of the source without reading its content.
+     * Caches compare fingerprints to find out whether the source changed since it was parsed.
+     * Like {@link #getContent()}, it updates last modified time of this source and latest
+     * modified time of its parents.
+     * 
+     * @return current fingerprint or <code>null</code> if the source does not exist or can not
+     * find it without reading the content.
+     */
+    public Fingerprint getFingerprint() {
+      return null;
+    }
+
+    /**
+     * @return fingerprint of the source at the time its content was read the last time or 
+     * <code>null</code> if it was not read yet or the source can not find it.
+     */
+    public Fingerprint getContentFingerprint() {
+      return contentFingerprint;
+    }
+
+    protected void setContentFingerprint(Fingerprint contentFingerprint) {
+      this.contentFingerprint = contentFingerprint;
+      setLastModified(contentFingerprint.getLastModified());
+    }
+
+    public synchronized void setLatestModified(long latestModified) {
       this.latestModified = latestModified;
       if (parent != null && latestModified > parent.getLatestModified()) {
         parent.setLatestModified(latestModified);
@@ -132,11 +227,14 @@ public abstract class LessSource {
     public String getContent() throws FileNotFound, CannotReadFile {
       try {
         URLConnection connection = getInputURL().openConnection();
-        Reader input = charsetName != null ? new InputStreamReader(connection.getInputStream(), charsetName) : new InputStreamReader(connection.getInputStream());
-        String content = IOUtils.toString(input).replace("\r\n", "\n");
-        setLastModified(connection.getLastModified());
-        input.close();
-        return content;
+        InputStream stream = connection.getInputStream();
+        try {
+          String content = ContentDecoder.read(stream, toCharset(charsetName), connection.getContentLength());
+          setLastModified(connection.getLastModified());
+          return content;
+        } finally {
+          stream.close();
+        }
       } catch (FileNotFoundException ex) {
         throw new FileNotFound();
       } catch (IOException ex) {
@@ -149,11 +247,15 @@ public abstract class LessSource {
     public byte[] getBytes() throws FileNotFound, CannotReadFile {
       try {
         URLConnection connection = getInputURL().openConnection();
-        Reader input = new InputStreamReader(connection.getInputStream());
-        setLastModified(connection.getLastModified());
-        byte[] content = IOUtils.toByteArray(input);
-        input.close();
-        return content;
+        InputStream stream = connection.getInputStream();
+        try {
+          // binary data must not go through charset decoding
+          byte[] content = IOUtils.toByteArray(stream);
+          setLastModified(connection.getLastModified());
+          return content;
+        } finally {
+          stream.close();
+        }
       } catch (FileNotFoundException ex) {
         throw new FileNotFound();
       } catch (IOException ex) {
@@ -272,19 +374,12 @@ public abstract class LessSource {
     @Override
     public String getContent() throws FileNotFound, CannotReadFile {
       try {
-        Reader input;
-        if (charsetName != null) {
-          input = new InputStreamReader(new FileInputStream(getInputFile()), charsetName);
-        } else {
-          input = new FileReader(getInputFile());
-        }
-        try {
-          String content = IOUtils.toString(input).replace("\r\n", "\n");
-          setLastModified(getInputFile().lastModified());
-          return content;
-        } finally {
-          input.close();
-        }
+        Charset charset = toCharset(charsetName);
+        // taken before the read, so concurrent modification looks like a change
+        Fingerprint fingerprint = currentFingerprint();
+        String content = ContentDecoder.read(getInputFile(), charset);
+        setContentFingerprint(fingerprint);
+        return content;
       } catch (FileNotFoundException ex) {
         throw new FileNotFound();
       } catch (IOException ex) {
@@ -295,8 +390,9 @@ public abstract class LessSource {
     @Override
     public byte[] getBytes() throws FileNotFound, CannotReadFile {
       try {
+        Fingerprint fingerprint = currentFingerprint();
         byte[] content = FileUtils.readFileToByteArray(getInputFile());
-        setLastModified(getInputFile().lastModified());
+        setContentFingerprint(fingerprint);
         return content;
       } catch (FileNotFoundException ex) {
         throw new FileNotFound();
@@ -305,6 +401,21 @@ public abstract class LessSource {
       }
     }
 
+    @Override
+    public Fingerprint getFingerprint() {
+      Fingerprint result = currentFingerprint();
+      // missing file has zero modification time
+      if (result.getLastModified() == 0)
+        return null;
+
+      setLastModified(result.getLastModified());
+      return result;
+    }
+
+    private Fingerprint currentFingerprint() {
+      return new Fingerprint(getInputFile().lastModified(), getInputFile().length());
+    }
+
     @Override
     public FileSource relativeSource(String filename) {
       return new FileSource(this, filename, charsetName);
@@ -435,7 +546,73 @@ public abstract class LessSource {
 
   }
 
+  /**
+   * Modification time and size of a source. Source with different fingerprint has changed, but
+   * source with the same fingerprint may have changed too if it was modified twice within 
+   * modification time precision and its size remained the same.
+   */
+  public static class Fingerprint {
+
+    private final long lastModified;
+    private final long size;
+
+    public Fingerprint(long lastModified, long size) {
+      this.lastModified = lastModified;
+      this.size = size;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + (int) (lastModified ^ (lastModified >>> 32));
+      result = prime * result + (int) (size ^ (size >>> 32));
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (obj == null)
+        return false;
+      if (getClass() != obj.getClass())
+        return false;
+      Fingerprint other = (Fingerprint) obj;
+      return lastModified == other.lastModified && size == other.size;
+    }
+
+    @Override
+    public String toString() {
+      return "Fingerprint [lastModified=" + lastModified + ", size=" + size + "]";
+    }
+
+  }
+
   @SuppressWarnings("serial")
+  /**
+   * Receives result of {@link LessSource#getContentAsync(Executor, ReadCallback)} or
+   * {@link LessSource#getBytesAsync(Executor, ReadCallback)}. It may be called from any thread.
+   */
+  public interface ReadCallback<T> {
+
+    void finished(T result);
+
+    /**
+     * @param problem {@link FileNotFound} or {@link CannotReadFile}
+     */
+    void failed(Exception problem);
+
+  }
+
   public static class StringSourceException extends Exception {
 
   }
@@ -0,0 +1,24 @@
+package com.github.sommeri.less4j;
+
+import java.util.Collection;
+
+/**
+ * Custom less function that knows names of less functions it is able to evaluate. Compiler asks
+ * it only about calls of those functions, so it does not have to ask it about every function call
+ * in the sheet. Functions implementing only {@link LessFunction} are asked about all calls.
+ *
+ */
+public interface NamedLessFunction extends LessFunction {
+
+  /**
+   * Names of less functions this implementation may evaluate. Names are compared case
+   * insensitively, {@link #canEvaluate(com.github.sommeri.less4j.core.ast.FunctionExpression, java.util.List)}
+   * is still called before evaluation and makes the final decision.
+   *
+   * The compiler reads names once per configuration, they should not change later.
+   *
+   * @return names of functions or <code>null</code> if the function should be asked about all calls
+   */
+  public Collection<String> getNames();
+
+}
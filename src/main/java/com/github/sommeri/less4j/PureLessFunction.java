@@ -0,0 +1,13 @@
+package com.github.sommeri.less4j;
+
+/**
+ * Custom less function whose result depends only on the name of called function and its
+ * arguments. Compiler remembers results of such functions and may return remembered result
+ * instead of calling the function again, also in later compilations with the same custom functions.
+ *
+ * Calls that reported errors or warnings are not remembered, so problems are reported each time.
+ *
+ */
+public interface PureLessFunction extends LessFunction {
+
+}
@@ -34,6 +34,15 @@ public class Arguments {
   @Parameter(names={"-pi", "--printIncorrect"}, description="Print result of syntactically incorrect input file. If not present, syntactically incorrect input files produce no result. If present, less4j prints whatever came out of the compilation as a compilation result - most likely an invalid CSS. ")
   private boolean printIncorrect;
 
+  @Parameter(names={"-t", "--threads"}, description="Number of threads used to compile input files in parallel. If not present, input files are compiled one after another. This option is available only in multiple files mode.")
+  private int threads = 1;
+
+  @Parameter(names={"-w", "--watch"}, description="Keep running after the compilation and watch input files and files they import. Whenever some of them changes, less4j compiles again input files affected by the change. Stop it with Ctrl+C.")
+  private boolean watch;
+
+  @Parameter(names={"-cd", "--cacheDir"}, description="Directory where less4j keeps parsed input files and files they import. Unchanged files are not parsed again by the next run that uses the same directory.")
+  private String cacheDirectory;
+
   public boolean isHelp() {
     return help;
   }
@@ -62,4 +71,16 @@ public class Arguments {
     return printIncorrect;
   }
 
+  public boolean isWatch() {
+    return watch;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public String getCacheDirectory() {
+    return cacheDirectory;
+  }
+
 }
@@ -3,25 +3,40 @@ package com.github.sommeri.less4j.commandline;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
 import com.github.sommeri.less4j.Less4jException;
+import com.github.sommeri.less4j.LessCompiler;
+import com.github.sommeri.less4j.LessCompiler.Cache;
 import com.github.sommeri.less4j.LessCompiler.CompilationResult;
 import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.core.BoundedAstCache;
+import com.github.sommeri.less4j.core.DiskAstCache;
 import com.github.sommeri.less4j.core.DefaultLessCompiler;
+import com.github.sommeri.less4j.core.IncrementalLessCompiler;
+import com.github.sommeri.less4j.core.ParallelLessCompiler;
 import com.github.sommeri.less4j.platform.Constants;
 import com.github.sommeri.less4j.utils.URIUtils;
 
 public class CommandLine {
   private static final String NAME = "less4j";
-  private static final String INTRO = "Less4j compiles less files into css files. It can run in two modes: single input file mode or in multiple input files mode. Less4j uses single file mode by default. \n\nBoth modes are able to generate source map files. Source map links elements from compiled css file back to original less files. It is useful when troubleshooting large complicated less files.\n\nSingle file mode: Less4j expects one or two arguments. First one contains input less filename and the second one contains " + "the output css filename. If the output file argument is not present, less4j will print the result into standard output." + "\n\nSource map is generated only if both arguments are supplied.\n\n" + "Multiple files mode: Must be turned on by '-m' or '--multiMode' parameter. Less4j assumes that all input files are " + "less files. All are going to be compiled into css files. Each input file will generate css file with the same name and suffix '.css' and source map file with suffix '.css.map'." + "\n\n";
-  private static final String OUTRO = "\nExamples:\n" + " - Compile 'test.less' file and print the result into standard output (does not generate source map):\n  # less4j test.less\n\n" + " - Compile 'test.less' file and print the result into 'test.css' file:\n  # less4j test.less test.css\n\n" + " - Compile 't1.less', 't2.less' and 't3.less' files into 't1.css', 't2.css' and 't3.css':\n  # less4j -m t1.less t2.less t3.less\n\n" + " - Compile 't1.less', 't2.less', 't3.less' files into 't1.css', 't2.css', 't3.css'. Place the result \n  into '..\\css\\' directory:\n  # less4j -m -o ..\\css\\ t1.less t2.less t3.less\n\n";
+  private static final String INTRO = "Less4j compiles less files into css files. It can run in two modes: single input file mode or in multiple input files mode. Less4j uses single file mode by default. \n\nBoth modes are able to generate source map files. Source map links elements from compiled css file back to original less files. It is useful when troubleshooting large complicated less files.\n\nSingle file mode: Less4j expects one or two arguments. First one contains input less filename and the second one contains " + "the output css filename. If the output file argument is not present, less4j will print the result into standard output." + "\n\nSource map is generated only if both arguments are supplied.\n\n" + "Multiple files mode: Must be turned on by '-m' or '--multiMode' parameter. Less4j assumes that all input files are " + "less files. All are going to be compiled into css files. Each input file will generate css file with the same name and suffix '.css' and source map file with suffix '.css.map'." + "\n\n" + "Both modes can watch files for changes: Must be turned on by '-w' or '--watch' parameter. Less4j keeps running and compiles input files again whenever they or files they import change.\n\n";
+  private static final String OUTRO = "\nExamples:\n" + " - Compile 'test.less' file and print the result into standard output (does not generate source map):\n  # less4j test.less\n\n" + " - Compile 'test.less' file and print the result into 'test.css' file:\n  # less4j test.less test.css\n\n" + " - Compile 't1.less', 't2.less' and 't3.less' files into 't1.css', 't2.css' and 't3.css':\n  # less4j -m t1.less t2.less t3.less\n\n" + " - Compile 't1.less', 't2.less', 't3.less' files into 't1.css', 't2.css', 't3.css'. Place the result \n  into '..\\css\\' directory:\n  # less4j -m -o ..\\css\\ t1.less t2.less t3.less\n\n" + " - Compile 't1.less', 't2.less' and 't3.less' files into 't1.css', 't2.css' and 't3.css' using 3 threads:\n  # less4j -m -t 3 t1.less t2.less t3.less\n\n" + " - Compile 't1.less' and 't2.less' files into 't1.css' and 't2.css' and compile them again each time \n  they or files they import change:\n  # less4j -m -w t1.less t2.less\n\n" + " - Compile 't1.less' into 't1.css' and keep parsed files in 'cache' directory, so the next run does not \n  parse unchanged imported files again:\n  # less4j -cd cache t1.less t1.css\n\n";
   private static final String SEPARATOR = java.io.File.separator;
+  private static final long WATCH_INTERVAL = 500;
 
   private CommandLinePrint print;
+  private LessCompiler compiler = new DefaultLessCompiler();
+  private Cache diskCache;
 
   public CommandLine() {
     print = new CommandLinePrint();
@@ -62,11 +77,59 @@ public class CommandLine {
 
     }
 
+    if (arguments.getCacheDirectory() != null) {
+      diskCache = new DiskAstCache(new File(arguments.getCacheDirectory()));
+    }
+
+    IncrementalLessCompiler incrementalCompiler = null;
+    if (arguments.isWatch()) {
+      incrementalCompiler = new IncrementalLessCompiler();
+      compiler = incrementalCompiler;
+    }
+
     if (arguments.isMultiMode()) {
-      runAsMultimode(arguments.getFiles(), arguments.getOutputDirectory(), arguments.isSourceMap(), arguments.isCompressing(), arguments.isPrintIncorrect());
+      runAsMultimode(arguments.getFiles(), arguments.getOutputDirectory(), arguments.isSourceMap(), arguments.isCompressing(), arguments.isPrintIncorrect(), arguments.getThreads());
     } else {
       runAsSinglemode(arguments.getFiles(), arguments.isSourceMap(), arguments.isCompressing(), arguments.isPrintIncorrect());
     }
+
+    if (incrementalCompiler != null && !arguments.getFiles().isEmpty()) {
+      watch(incrementalCompiler, arguments);
+    }
+  }
+
+  /**
+   * Polls modification times of compiled files and their imports, java 6 has no file system
+   * notifications. Runs until the thread is interrupted or the process killed.
+   */
+  private void watch(IncrementalLessCompiler incrementalCompiler, Arguments arguments) {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        Thread.sleep(WATCH_INTERVAL);
+        List<LessSource> modified = incrementalCompiler.findModifiedSources();
+        if (modified.isEmpty())
+          continue;
+
+        for (LessSource entryPoint : incrementalCompiler.getAffectedEntryPoints(modified)) {
+          compileAgain(entryPoint, arguments);
+        }
+      }
+    } catch (InterruptedException ex) {
+      // stop watching
+    }
+  }
+
+  private void compileAgain(LessSource entryPoint, Arguments arguments) {
+    if (!arguments.isMultiMode()) {
+      runAsSinglemode(arguments.getFiles(), arguments.isSourceMap(), arguments.isCompressing(), arguments.isPrintIncorrect());
+      return;
+    }
+
+    for (String filename : arguments.getFiles()) {
+      if (entryPoint.equals(new LessSource.FileSource(new File(filename)))) {
+        compileInMultimode(filename, arguments.getOutputDirectory(), arguments.isSourceMap(), arguments.isCompressing(), arguments.isPrintIncorrect());
+      }
+    }
   }
 
   private void runAsSinglemode(List<String> files, boolean generateSourceMap, boolean isCompressing, boolean printPartial) {
@@ -122,31 +185,90 @@ public class CommandLine {
     }
   }
 
-  private void runAsMultimode(List<String> files, String outputDirectory, boolean generateSourceMap, boolean isCompressing, boolean printPartial) {
+  private void runAsMultimode(List<String> files, String outputDirectory, boolean generateSourceMap, boolean isCompressing, boolean printPartial, int threads) {
+    if (threads < 1) {
+      print.reportError("Number of threads must be positive.");
+      return;
+    }
     if (!print.ensureDirectory(outputDirectory))
       return;
 
+    if (threads > 1 && files.size() > 1) {
+      runAsParallelMultimode(files, outputDirectory, generateSourceMap, isCompressing, printPartial, threads);
+      return;
+    }
+
     for (String filename : files) {
-      File inputFile = new File(filename);
-      String cssFilename = toOutputFilename(outputDirectory, filename, Constants.CSS_SUFFIX);
-      String mapFilename = generateSourceMap? toOutputFilename(outputDirectory, filename, Constants.FULL_SOURCE_MAP_SUFFIX): null;
-      try {
-        CompilationResult content = compile(inputFile, toFile(cssFilename), generateSourceMap, isCompressing);
-        print.printToFiles(content, filename, inputFile, cssFilename, mapFilename);
-      } catch (Less4jException ex) {
-        CompilationResult partialResult = ex.getPartialResult();
-        if (printPartial) {
-          print.printToFiles(partialResult, filename, inputFile, cssFilename, mapFilename);
-          print.reportErrors(ex, filename, inputFile);
-        } else {
-          print.reportErrorsAndWarnings(ex, filename, inputFile);
+      compileInMultimode(filename, outputDirectory, generateSourceMap, isCompressing, printPartial);
+    }
+  }
+
+  /**
+   * Compiles files concurrently, but prints results and errors in the same order as sequential
+   * compilation would.
+   */
+  private void runAsParallelMultimode(List<String> files, String outputDirectory, boolean generateSourceMap, boolean isCompressing, boolean printPartial, int threads) {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+    try {
+      Cache cache = diskCache != null ? diskCache : compiler instanceof IncrementalLessCompiler ? ((IncrementalLessCompiler) compiler).getCache() : new BoundedAstCache();
+      ParallelLessCompiler parallelCompiler = new ParallelLessCompiler(executor, cache, compiler);
+
+      List<Future<CompilationResult>> results = new ArrayList<Future<CompilationResult>>();
+      for (String filename : files) {
+        File cssFile = toFile(toOutputFilename(outputDirectory, filename, Constants.CSS_SUFFIX));
+        LessSource source = new LessSource.FileSource(new File(filename), "utf-8");
+        results.add(parallelCompiler.compile(source, toConfiguration(cssFile, generateSourceMap, isCompressing)));
+      }
+
+      for (int i = 0; i < files.size(); i++) {
+        String filename = files.get(i);
+        try {
+          printMultimodeResult(filename, outputDirectory, generateSourceMap, results.get(i).get());
+        } catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          if (cause instanceof RuntimeException)
+            throw (RuntimeException) cause;
+          if (cause instanceof Error)
+            throw (Error) cause;
+
+          printMultimodeErrors(filename, outputDirectory, generateSourceMap, printPartial, (Less4jException) cause);
         }
-        print.reportCouldNotCompileTheFile(filename);
       }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 
+  private void compileInMultimode(String filename, String outputDirectory, boolean generateSourceMap, boolean isCompressing, boolean printPartial) {
+    String cssFilename = toOutputFilename(outputDirectory, filename, Constants.CSS_SUFFIX);
+    try {
+      CompilationResult content = compile(new File(filename), toFile(cssFilename), generateSourceMap, isCompressing);
+      printMultimodeResult(filename, outputDirectory, generateSourceMap, content);
+    } catch (Less4jException ex) {
+      printMultimodeErrors(filename, outputDirectory, generateSourceMap, printPartial, ex);
     }
   }
 
+  private void printMultimodeResult(String filename, String outputDirectory, boolean generateSourceMap, CompilationResult content) {
+    String cssFilename = toOutputFilename(outputDirectory, filename, Constants.CSS_SUFFIX);
+    String mapFilename = generateSourceMap? toOutputFilename(outputDirectory, filename, Constants.FULL_SOURCE_MAP_SUFFIX): null;
+    print.printToFiles(content, filename, new File(filename), cssFilename, mapFilename);
+  }
+
+  private void printMultimodeErrors(String filename, String outputDirectory, boolean generateSourceMap, boolean printPartial, Less4jException ex) {
+    File inputFile = new File(filename);
+    CompilationResult partialResult = ex.getPartialResult();
+    if (printPartial) {
+      printMultimodeResult(filename, outputDirectory, generateSourceMap, partialResult);
+      print.reportErrors(ex, filename, inputFile);
+    } else {
+      print.reportErrorsAndWarnings(ex, filename, inputFile);
+    }
+    print.reportCouldNotCompileTheFile(filename);
+  }
+
   private String toOutputFilename(String outputDirectory, String inputFilename, String dottedSuffix) {
     String filename = URIUtils.changeSuffix(inputFilename, dottedSuffix);
     if (outputDirectory == null || outputDirectory.isEmpty()) {
@@ -161,13 +283,16 @@ public class CommandLine {
   }
 
   private CompilationResult compile(File lessFile, File cssFile, boolean generateSourceMap, boolean isCompressing) throws Less4jException {
+    return compiler.compile(lessFile, toConfiguration(cssFile, generateSourceMap, isCompressing));
+  }
+
+  private Configuration toConfiguration(File cssFile, boolean generateSourceMap, boolean isCompressing) {
     Configuration configuration = new Configuration();
     configuration.setCssResultLocation(cssFile);
+    configuration.setCache(diskCache);
     configuration.setCompressing(isCompressing);
     configuration.getSourceMapConfiguration().setLinkSourceMap(generateSourceMap && cssFile != null);
-
-    DefaultLessCompiler compiler = new DefaultLessCompiler();
-    return compiler.compile(lessFile, configuration);
+    return configuration;
   }
 
   private void printVersion(JCommander jCommander) {
@@ -0,0 +1,494 @@
+package com.github.sommeri.less4j.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.antlr.runtime.CommonToken;
+import org.apache.commons.io.IOUtils;
+
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.core.ast.ASTCssNode;
+import com.github.sommeri.less4j.core.parser.HiddenTokenAwareTree;
+import com.github.sommeri.less4j.core.parser.SourcePositionTree;
+
+/**
+ * Writes abstract syntax trees into compact binary form and reads them back. Use it to store
+ * parsed sheets between runs or to send them into another process.
+ *
+ * The data starts with a header holding format version and less4j version. Trees written by
+ * a different version can not be read, {@link IncompatibleFormatException} is thrown instead.
+ * The header is followed by the table of sources referenced by the tree and the tree itself.
+ * Sources are not written, only their names and uris are. The reader supplies its own
+ * sources using {@link SourceResolver}.
+ *
+ * The tree is written using java serialization with following changes:
+ * <ul>
+ * <li>classes are identified by name and hash of their serializable fields, field descriptions are not written,</li>
+ * <li>equal strings are written only once,</li>
+ * <li>tokens are written as variable length numbers and do not keep reference to the input stream.</li>
+ * </ul>
+ * Reader accepts only classes that can be part of the tree: nodes, parse trees, strings, boxed
+ * primitives and collections used by nodes. Other classes are rejected with
+ * {@link InvalidClassException}, so reading untrusted data can not instantiate them. Classes whose
+ * fields changed since the tree was written, lengths that do not fit into the data and other
+ * damaged data cause {@link IncompatibleFormatException}.
+ *
+ * Source positions are kept, so source maps and error messages work the same way as with
+ * freshly parsed trees.
+ *
+ * Instances are thread safe.
+ */
+public class AstSerializer {
+
+  private static final int MAGIC = 0x4c344a53;
+  private static final int FORMAT_VERSION = 3;
+  private static final String LESS4J_VERSION = readVersion();
+  private static final ConcurrentMap<String, Long> layoutHashes = new ConcurrentHashMap<String, Long>();
+
+  public byte[] write(ASTCssNode node) throws IOException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    write(node, result);
+    return result.toByteArray();
+  }
+
+  /**
+   * Writes the tree into the output. The output is not closed.
+   */
+  public void write(ASTCssNode node, OutputStream output) throws IOException {
+    // sources are collected while the tree is written, but must be placed before it
+    ByteArrayOutputStream tree = new ByteArrayOutputStream();
+    CompactOutput objects = new CompactOutput(tree);
+    objects.writeObject(node);
+    objects.flush();
+
+    DataOutputStream data = new DataOutputStream(output);
+    data.writeInt(MAGIC);
+    data.writeInt(FORMAT_VERSION);
+    data.writeUTF(LESS4J_VERSION);
+    writeVarint(data, objects.sources.size());
+    for (LessSource source : objects.sources) {
+      writeNullable(data, source.getName());
+      URI uri = source.getURI();
+      writeNullable(data, uri == null ? null : uri.toString());
+    }
+    tree.writeTo(data);
+    data.flush();
+  }
+
+  /**
+   * Reads tree written by {@link #write(ASTCssNode, OutputStream)}.
+   *
+   * @throws IncompatibleFormatException if the data were not written by this version of less4j
+   * or are damaged
+   */
+  public ASTCssNode read(byte[] data, SourceResolver resolver) throws IOException {
+    try {
+      return read(new ByteArrayInputStream(data), resolver);
+    } catch (RuntimeException ex) {
+      throw new IncompatibleFormatException("Damaged data: " + ex);
+    }
+  }
+
+  /**
+   * Reads the input to its end, the tree must be the last thing in it. The input is not closed.
+   *
+   * @see #read(byte[], SourceResolver)
+   */
+  public ASTCssNode read(InputStream input, SourceResolver resolver) throws IOException {
+    return read(IOUtils.toByteArray(input), resolver);
+  }
+
+  private ASTCssNode read(ByteArrayInputStream input, SourceResolver resolver) throws IOException {
+    DataInputStream data = new DataInputStream(input);
+    if (data.readInt() != MAGIC)
+      throw new IncompatibleFormatException("Data do not contain less4j tree.");
+    int formatVersion = data.readInt();
+    String less4jVersion = data.readUTF();
+    if (formatVersion != FORMAT_VERSION || !LESS4J_VERSION.equals(less4jVersion))
+      throw new IncompatibleFormatException("Tree was written by less4j " + less4jVersion + ", current version is " + LESS4J_VERSION + ".");
+
+    int sourcesCount = readLength(data);
+    List<LessSource> sources = new ArrayList<LessSource>(sourcesCount);
+    for (int i = 0; i < sourcesCount; i++) {
+      String name = readNullable(data);
+      String uri = readNullable(data);
+      sources.add(resolver.resolve(name, toURI(uri)));
+    }
+
+    try {
+      return (ASTCssNode) new CompactInput(input, sources).readObject();
+    } catch (ClassNotFoundException ex) {
+      throw new IncompatibleFormatException(ex.getMessage());
+    } catch (ClassCastException ex) {
+      throw new IncompatibleFormatException(ex.getMessage());
+    }
+  }
+
+  /**
+   * Resolver that uses the same source for all sources referenced by the tree. Trees built by
+   * parser reference only the parsed source.
+   */
+  public static SourceResolver singleSource(final LessSource source) {
+    return new SourceResolver() {
+
+      @Override
+      public LessSource resolve(String name, URI uri) {
+        return source;
+      }
+    };
+  }
+
+  /**
+   * Writes zig-zag encoded int, small positive and negative numbers take one byte.
+   */
+  public static void writeVarint(DataOutput output, int value) throws IOException {
+    int encoded = (value << 1) ^ (value >> 31);
+    while ((encoded & ~0x7F) != 0) {
+      output.writeByte((encoded & 0x7F) | 0x80);
+      encoded >>>= 7;
+    }
+    output.writeByte(encoded);
+  }
+
+  public static int readVarint(DataInput input) throws IOException {
+    int encoded = 0;
+    int shift = 0;
+    byte current;
+    do {
+      if (shift > 28)
+        throw new IncompatibleFormatException("Malformed variable length number.");
+      current = input.readByte();
+      encoded |= (current & 0x7F) << shift;
+      shift += 7;
+    } while ((current & 0x80) != 0);
+    return (encoded >>> 1) ^ -(encoded & 1);
+  }
+
+  /**
+   * Reads length of a list written by {@link #writeVarint(DataOutput, int)}. Each element takes
+   * at least one byte, so lengths larger than the rest of the data are rejected.
+   */
+  public static int readLength(DataInput input) throws IOException {
+    int length = readVarint(input);
+    if (length < 0 || length > remaining(input))
+      throw new IncompatibleFormatException("Invalid length " + length + ".");
+    return length;
+  }
+
+  private static int remaining(DataInput input) throws IOException {
+    if (input instanceof CompactInput)
+      return ((CompactInput) input).remaining();
+    // available bytes of object streams say nothing about the rest of the data
+    if (input instanceof InputStream && !(input instanceof ObjectInput))
+      return ((InputStream) input).available();
+    return Integer.MAX_VALUE;
+  }
+
+  private static void writeNullable(DataOutput output, String value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null)
+      output.writeUTF(value);
+  }
+
+  private static String readNullable(DataInput input) throws IOException {
+    return input.readBoolean() ? input.readUTF() : null;
+  }
+
+  private static URI toURI(String uri) throws IncompatibleFormatException {
+    try {
+      return uri == null ? null : new URI(uri);
+    } catch (URISyntaxException ex) {
+      throw new IncompatibleFormatException(ex.getMessage());
+    }
+  }
+
+  private static String readVersion() {
+    InputStream stream = AstSerializer.class.getResourceAsStream("/version.prop");
+    if (stream == null)
+      return "UNKNOWN";
+    try {
+      Properties props = new Properties();
+      props.load(stream);
+      stream.close();
+      return String.valueOf(props.get("version"));
+    } catch (IOException e) {
+      return "UNKNOWN";
+    }
+  }
+
+  /**
+   * Supplies sources to trees read by {@link AstSerializer}.
+   */
+  public interface SourceResolver {
+
+    /**
+     * @param name name of the source tree was written with, may be <code>null</code>
+     * @param uri uri of the source tree was written with, may be <code>null</code>
+     */
+    LessSource resolve(String name, URI uri);
+
+  }
+
+  public static class IncompatibleFormatException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public IncompatibleFormatException(String message) {
+      super(message);
+    }
+
+  }
+
+  private static class CompactOutput extends ObjectOutputStream {
+
+    private final List<LessSource> sources = new ArrayList<LessSource>();
+    private final Map<LessSource, SourceReference> sourceReferences = new IdentityHashMap<LessSource, SourceReference>();
+    private final Map<String, String> strings = new HashMap<String, String>();
+
+    public CompactOutput(OutputStream out) throws IOException {
+      super(out);
+      enableReplaceObject(true);
+    }
+
+    @Override
+    protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+      writeUTF(desc.getName());
+      writeLong(layoutHash(desc));
+    }
+
+    @Override
+    protected Object replaceObject(Object obj) throws IOException {
+      if (obj instanceof String)
+        return intern((String) obj);
+      if (obj instanceof CommonToken)
+        return new CompactToken((CommonToken) obj);
+      if (obj instanceof LessSource)
+        return toReference((LessSource) obj);
+
+      return obj;
+    }
+
+    private String intern(String string) {
+      String known = strings.get(string);
+      if (known != null)
+        return known;
+
+      strings.put(string, string);
+      return string;
+    }
+
+    private SourceReference toReference(LessSource source) {
+      SourceReference reference = sourceReferences.get(source);
+      if (reference == null) {
+        reference = new SourceReference(sources.size());
+        sources.add(source);
+        sourceReferences.put(source, reference);
+      }
+      return reference;
+    }
+
+  }
+
+  private static class CompactInput extends ObjectInputStream {
+
+    private static final Set<String> ALLOWED_CLASSES = new HashSet<String>(Arrays.asList( //
+        String.class.getName(), Boolean.class.getName(), Byte.class.getName(), Character.class.getName(), //
+        Short.class.getName(), Integer.class.getName(), Long.class.getName(), Float.class.getName(), //
+        Double.class.getName(), Number.class.getName(), Enum.class.getName(), //
+        ArrayList.class.getName(), LinkedList.class.getName(), HashMap.class.getName(), //
+        LinkedHashMap.class.getName(), HashSet.class.getName(), LinkedHashSet.class.getName(), //
+        Collections.emptyList().getClass().getName(), Collections.emptyMap().getClass().getName(), //
+        Collections.emptySet().getClass().getName(), Collections.singletonList(null).getClass().getName(), //
+        Collections.unmodifiableMap(Collections.emptyMap()).getClass().getName(), //
+        HiddenTokenAwareTree.class.getName(), SourcePositionTree.class.getName(), //
+        SourceReference.class.getName(), CompactToken.class.getName()));
+
+    private static final String AST_PACKAGE = ASTCssNode.class.getPackage().getName() + ".";
+    private static final String LESS4J_PACKAGE = "com.github.sommeri.less4j.";
+
+    // object stream reads ahead at most one data block
+    private static final int MAX_BLOCK_SIZE = 1024;
+
+    private final ByteArrayInputStream data;
+    private final List<LessSource> sources;
+
+    public CompactInput(ByteArrayInputStream data, List<LessSource> sources) throws IOException {
+      super(data);
+      this.data = data;
+      this.sources = sources;
+      enableResolveObject(true);
+    }
+
+    /**
+     * @return upper bound of unread bytes
+     */
+    public int remaining() {
+      return data.available() + MAX_BLOCK_SIZE;
+    }
+
+    @Override
+    protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+      Class<?> clazz = toAllowedClass(readUTF());
+      long layoutHash = readLong();
+      ObjectStreamClass result = ObjectStreamClass.lookup(clazz);
+      if (result == null)
+        throw new IncompatibleFormatException("Class " + clazz.getName() + " is not serializable.");
+      // the same version may be built from different sources, e.g. snapshots
+      if (layoutHash != layoutHash(result))
+        throw new IncompatibleFormatException("Fields of class " + clazz.getName() + " changed since the tree was written.");
+      return result;
+    }
+
+    private Class<?> toAllowedClass(String name) throws IOException, ClassNotFoundException {
+      boolean allowed = ALLOWED_CLASSES.contains(name);
+      // classes outside of less4j are not even loaded
+      if (!allowed && !name.startsWith(LESS4J_PACKAGE))
+        throw new InvalidClassException(name, "Class is not allowed in less4j tree.");
+
+      Class<?> clazz = Class.forName(name, false, AstSerializer.class.getClassLoader());
+      if (allowed || ASTCssNode.class.isAssignableFrom(clazz) || LessSource.class.isAssignableFrom(clazz))
+        return clazz;
+      // enums used by nodes, e.g. operators
+      if (clazz.isEnum() && clazz.getName().startsWith(AST_PACKAGE))
+        return clazz;
+
+      throw new InvalidClassException(name, "Class is not allowed in less4j tree.");
+    }
+
+    @Override
+    protected Object resolveObject(Object obj) throws IOException {
+      if (obj instanceof SourceReference) {
+        int index = ((SourceReference) obj).index;
+        if (index < 0 || index >= sources.size())
+          throw new IncompatibleFormatException("Unknown source " + index + ".");
+        return sources.get(index);
+      }
+
+      return obj;
+    }
+
+  }
+
+  /**
+   * Hash of class name and names and types of its serializable fields.
+   */
+  private static long layoutHash(ObjectStreamClass desc) {
+    Long known = layoutHashes.get(desc.getName());
+    if (known != null)
+      return known;
+
+    StringBuilder layout = new StringBuilder(desc.getName());
+    for (ObjectStreamField field : desc.getFields()) {
+      layout.append(';').append(field.getName()).append(':').append(field.getTypeCode());
+      if (field.getTypeString() != null)
+        layout.append(field.getTypeString());
+    }
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(layout.toString().getBytes("UTF-8"));
+      long result = 0;
+      for (int i = 0; i < 8; i++) {
+        result = (result << 8) | (digest[i] & 0xFF);
+      }
+      layoutHashes.putIfAbsent(desc.getName(), result);
+      return result;
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    } catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private static class SourceReference implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int index;
+
+    public SourceReference(int index) {
+      this.index = index;
+    }
+
+  }
+
+  /**
+   * Token without reference to the input stream. Its text is kept in the token itself.
+   */
+  private static class CompactToken implements Externalizable {
+
+    private CommonToken token;
+
+    @SuppressWarnings("unused")
+    public CompactToken() {
+    }
+
+    public CompactToken(CommonToken token) {
+      this.token = token;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      writeVarint(out, token.getType());
+      writeVarint(out, token.getChannel());
+      writeVarint(out, token.getLine());
+      writeVarint(out, token.getCharPositionInLine());
+      writeVarint(out, token.getTokenIndex());
+      writeVarint(out, token.getStartIndex());
+      writeVarint(out, token.getStopIndex());
+      out.writeObject(token.getText());
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      token = new CommonToken(readVarint(in));
+      token.setChannel(readVarint(in));
+      token.setLine(readVarint(in));
+      token.setCharPositionInLine(readVarint(in));
+      token.setTokenIndex(readVarint(in));
+      token.setStartIndex(readVarint(in));
+      token.setStopIndex(readVarint(in));
+      token.setText((String) in.readObject());
+    }
+
+    private Object readResolve() {
+      return token;
+    }
+
+  }
+
+}
@@ -0,0 +1,245 @@
+package com.github.sommeri.less4j.core;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.github.sommeri.less4j.LessCompiler.Cache;
+import com.github.sommeri.less4j.LessCompiler.ContentAwareCache;
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.LessSource.AbstractHierarchicalSource;
+import com.github.sommeri.less4j.LessSource.CannotReadFile;
+import com.github.sommeri.less4j.LessSource.FileNotFound;
+import com.github.sommeri.less4j.LessSource.Fingerprint;
+import com.github.sommeri.less4j.core.ast.ASTCssNode;
+
+/**
+ * Thread safe {@link Cache} with limited size. When the cache is full, least recently used
+ * entries are evicted. The size is limited by number of entries and optionally also by estimated
+ * weight of cached abstract syntax trees - weight of an entry is the number of nodes in its tree.
+ *
+ * Cached entries are dropped when their source changes, see {@link Invalidation} for available
+ * strategies. The default is {@link Invalidation#LAST_MODIFIED}.
+ *
+ */
+public class BoundedAstCache implements ContentAwareCache {
+
+  public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+  public enum Invalidation {
+    /**
+     * Entries stay valid until they are evicted. Use only if cached sources never change.
+     */
+    NONE,
+    /**
+     * Entries are dropped when {@link AbstractHierarchicalSource#getFingerprint() fingerprint} of
+     * their source changes, e.g., when a file last modified time or size changes. Source content
+     * is not read. Sources without fingerprint stay valid until they are evicted.
+     */
+    LAST_MODIFIED,
+    /**
+     * Same as {@link #LAST_MODIFIED}, but all sources are also dropped when their content hash
+     * changes. Source content is read on each cache hit, it is still much cheaper than parsing it.
+     */
+    CONTENT_HASH
+  }
+
+  private final int maxEntries;
+  private final long maxWeight;
+  private final Invalidation invalidation;
+
+  private final LinkedHashMap<LessSource, CachedAst> entries = new LinkedHashMap<LessSource, CachedAst>(16, 0.75f, true);
+  private long weight = 0;
+
+  public BoundedAstCache() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  public BoundedAstCache(int maxEntries) {
+    this(maxEntries, Long.MAX_VALUE, Invalidation.LAST_MODIFIED);
+  }
+
+  /**
+   * @param maxEntries maximum number of cached trees
+   * @param maxWeight maximum number of nodes in all cached trees together
+   * @param invalidation when are cached trees dropped
+   */
+  public BoundedAstCache(int maxEntries, long maxWeight, Invalidation invalidation) {
+    if (maxEntries < 1 || maxWeight < 1)
+      throw new IllegalArgumentException("Cache limits must be positive.");
+    if (invalidation == null)
+      throw new IllegalArgumentException("Invalidation strategy must not be null.");
+
+    this.maxEntries = maxEntries;
+    this.maxWeight = maxWeight;
+    this.invalidation = invalidation;
+  }
+
+  @Override
+  public Object getAst(LessSource key) {
+    CachedAst cached;
+    synchronized (this) {
+      cached = entries.get(key);
+    }
+    if (cached == null)
+      return null;
+
+    // validation may read the source, so it runs outside of the lock
+    if (!isValid(key, cached)) {
+      remove(key, cached);
+      return null;
+    }
+    return cached.ast;
+  }
+
+  /**
+   * With {@link Invalidation#CONTENT_HASH}, the source is read again to compute its hash. Prefer
+   * {@link #setAst(LessSource, String, Object)} when the parsed content is available.
+   */
+  @Override
+  public void setAst(LessSource key, Object value) {
+    put(key, value, contentHash(key));
+  }
+
+  @Override
+  public void setAst(LessSource key, String content, Object value) {
+    put(key, value, invalidation == Invalidation.CONTENT_HASH && content != null ? sha1(content) : null);
+  }
+
+  private void put(LessSource key, Object value, byte[] contentHash) {
+    CachedAst cached = new CachedAst(value, estimateWeight(value), parsedFingerprint(key), contentHash);
+    synchronized (this) {
+      CachedAst previous = entries.put(key, cached);
+      if (previous != null)
+        weight -= previous.weight;
+      weight += cached.weight;
+      evict();
+    }
+  }
+
+  public synchronized void invalidate(LessSource key) {
+    CachedAst previous = entries.remove(key);
+    if (previous != null)
+      weight -= previous.weight;
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    weight = 0;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return number of nodes in all cached trees together
+   */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  private synchronized void remove(LessSource key, CachedAst expected) {
+    // another thread may have cached fresh tree meanwhile
+    if (entries.get(key) == expected) {
+      entries.remove(key);
+      weight -= expected.weight;
+    }
+  }
+
+  private void evict() {
+    Iterator<CachedAst> eldest = entries.values().iterator();
+    while ((entries.size() > maxEntries || weight > maxWeight) && eldest.hasNext()) {
+      weight -= eldest.next().weight;
+      eldest.remove();
+    }
+  }
+
+  private boolean isValid(LessSource key, CachedAst cached) {
+    if (invalidation == Invalidation.NONE)
+      return true;
+
+    if (cached.fingerprint != null && !cached.fingerprint.equals(((AbstractHierarchicalSource) key).getFingerprint()))
+      return false;
+
+    if (invalidation == Invalidation.CONTENT_HASH)
+      return Arrays.equals(contentHash(key), cached.contentHash);
+
+    return true;
+  }
+
+  /**
+   * Fingerprint of the source at the time it was read - the source may have changed since.
+   */
+  private Fingerprint parsedFingerprint(LessSource key) {
+    if (invalidation == Invalidation.NONE || !(key instanceof AbstractHierarchicalSource))
+      return null;
+
+    AbstractHierarchicalSource source = (AbstractHierarchicalSource) key;
+    return source.getContentFingerprint() != null ? source.getContentFingerprint() : source.getFingerprint();
+  }
+
+  private byte[] contentHash(LessSource key) {
+    if (invalidation != Invalidation.CONTENT_HASH)
+      return null;
+
+    try {
+      return sha1(key.getContent());
+    } catch (FileNotFound e) {
+      return null;
+    } catch (CannotReadFile e) {
+      return null;
+    }
+  }
+
+  private byte[] sha1(String content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      return digest.digest(content.getBytes("UTF-8"));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private long estimateWeight(Object ast) {
+    if (!(ast instanceof ASTCssNode))
+      return 1;
+
+    long result = 0;
+    List<ASTCssNode> stack = new ArrayList<ASTCssNode>();
+    stack.add((ASTCssNode) ast);
+    while (!stack.isEmpty()) {
+      ASTCssNode node = stack.remove(stack.size() - 1);
+      result++;
+      for (ASTCssNode kid : node.getChilds()) {
+        if (kid != null)
+          stack.add(kid);
+      }
+    }
+    return result;
+  }
+
+  private static class CachedAst {
+
+    private final Object ast;
+    private final long weight;
+    private final Fingerprint fingerprint;
+    private final byte[] contentHash;
+
+    public CachedAst(Object ast, long weight, Fingerprint fingerprint, byte[] contentHash) {
+      this.ast = ast;
+      this.weight = weight;
+      this.fingerprint = fingerprint;
+      this.contentHash = contentHash;
+    }
+
+  }
+
+}
@@ -6,54 +6,57 @@ import java.net.URL;
 import com.github.sommeri.less4j.Less4jException;
 import com.github.sommeri.less4j.LessCompiler;
 import com.github.sommeri.less4j.LessSource;
-
+import com.github.sommeri.less4j.core.parser.ANTLRParser;
+
+/**
+ * Thread safe compiler. Create it once and share it - parser is created only once and
+ * shared by all compilations, each compile call allocates only its own per compilation 
+ * state.
+ *
+ */
 public class DefaultLessCompiler implements LessCompiler {
 
+  private final ANTLRParser parser = new ANTLRParser();
+
   @Override
   public CompilationResult compile(String lessContent) throws Less4jException {
-    ThreadUnsafeLessCompiler compiler = new ThreadUnsafeLessCompiler();
-    return compiler.compile(lessContent);
+    return compile(new LessSource.StringSource(lessContent), null);
   }
 
   @Override
   public CompilationResult compile(String lessContent, Configuration options) throws Less4jException {
-    ThreadUnsafeLessCompiler compiler = new ThreadUnsafeLessCompiler();
-    return compiler.compile(lessContent, options);
+    return compile(new LessSource.StringSource(lessContent), options);
   }
 
   @Override
   public CompilationResult compile(File lessFile) throws Less4jException {
-    ThreadUnsafeLessCompiler compiler = new ThreadUnsafeLessCompiler();
-    return compiler.compile(lessFile);
+    return compile(new LessSource.FileSource(lessFile), null);
   }
 
   @Override
-  public CompilationResult compile(URL lessURL) throws Less4jException {
-    ThreadUnsafeLessCompiler compiler = new ThreadUnsafeLessCompiler();
-    return compiler.compile(lessURL);
+  public CompilationResult compile(File lessFile, Configuration options) throws Less4jException {
+    return compile(new LessSource.FileSource(lessFile, "utf-8"), options);
   }
 
   @Override
-  public CompilationResult compile(URL lessURL, Configuration options) throws Less4jException {
-    ThreadUnsafeLessCompiler compiler = new ThreadUnsafeLessCompiler();
-    return compiler.compile(lessURL, options);
+  public CompilationResult compile(URL lessURL) throws Less4jException {
+    return compile(new LessSource.URLSource(lessURL));
   }
 
-  public CompilationResult compile(LessSource source) throws Less4jException {
-    ThreadUnsafeLessCompiler compiler = new ThreadUnsafeLessCompiler();
-    return compiler.compile(source);
+  @Override
+  public CompilationResult compile(URL lessURL, Configuration options) throws Less4jException {
+    return compile(new LessSource.URLSource(lessURL), options);
   }
 
   @Override
-  public CompilationResult compile(File lessFile, Configuration options) throws Less4jException {
-    ThreadUnsafeLessCompiler compiler = new ThreadUnsafeLessCompiler();
-    return compiler.compile(lessFile, options);
+  public CompilationResult compile(LessSource source) throws Less4jException {
+    return compile(source, new Configuration());
   }
 
   @Override
   public CompilationResult compile(LessSource source, Configuration options) throws Less4jException {
-    ThreadUnsafeLessCompiler compiler = new ThreadUnsafeLessCompiler();
-    return compiler.compile(source, options);
+    Compilation compilation = new Compilation(parser, options);
+    return compilation.compile(source);
   }
 
 }
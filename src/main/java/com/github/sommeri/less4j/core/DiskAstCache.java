@@ -0,0 +1,262 @@
+package com.github.sommeri.less4j.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import com.github.sommeri.less4j.LessCompiler.Cache;
+import com.github.sommeri.less4j.LessCompiler.ContentAwareCache;
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.LessSource.AbstractHierarchicalSource;
+import com.github.sommeri.less4j.LessSource.CannotReadFile;
+import com.github.sommeri.less4j.LessSource.FileNotFound;
+import com.github.sommeri.less4j.LessSource.FileSource;
+import com.github.sommeri.less4j.LessSource.Fingerprint;
+import com.github.sommeri.less4j.core.ast.ASTCssNode;
+
+/**
+ * {@link Cache} that keeps parsed abstract syntax trees in files inside a directory, so they
+ * survive the end of the process. Use it to skip parsing of large unchanged libraries in
+ * separate command line or build runs.
+ *
+ * Each source has its own file named by hash of its location. The file contains fingerprint
+ * and hash of source content. If the source fingerprint did not change, cached tree is used
+ * without reading the source. Otherwise, it is used only if the current content has the same
+ * hash. Trees are stored by {@link AstSerializer} together with their checksum, files written
+ * by different less4j versions are ignored. Source positions are kept, so source maps and
+ * error messages work the same way as with freshly parsed trees.
+ *
+ * Trees are stored only by {@link #setAst(LessSource, String, Object)}, which gets the content
+ * they were parsed from. Sources without uri and name are not cached. The cache is thread safe
+ * and multiple processes can share the same directory. It removes only damaged files, remove
+ * the directory if it grows too big.
+ *
+ */
+public class DiskAstCache implements ContentAwareCache {
+
+  private static final String SUFFIX = ".ast";
+  private static final int HASH_LENGTH = 20;
+
+  private final File directory;
+  private final AstSerializer serializer = new AstSerializer();
+
+  public DiskAstCache(File directory) {
+    this.directory = directory;
+  }
+
+  @Override
+  public Object getAst(LessSource key) {
+    File file = toFile(key);
+    if (file == null || !file.exists())
+      return null;
+
+    byte[] tree;
+    try {
+      InputStream input = new BufferedInputStream(new FileInputStream(file));
+      try {
+        DataInputStream data = new DataInputStream(input);
+        if (!isValid(data, key))
+          return null;
+
+        tree = readTree(data, file.length());
+      } finally {
+        input.close();
+      }
+    } catch (IOException ex) {
+      // unreadable or truncated
+      return null;
+    }
+    if (tree == null) {
+      file.delete();
+      return null;
+    }
+
+    try {
+      return serializer.read(tree, AstSerializer.singleSource(key));
+    } catch (IOException ex) {
+      // written by different less4j version
+      return null;
+    } catch (RuntimeException ex) {
+      // damaged in a way the checksum did not notice
+      file.delete();
+      return null;
+    }
+  }
+
+  /**
+   * Does nothing, content of the source may have changed since the tree was parsed. 
+   */
+  @Override
+  public void setAst(LessSource key, Object value) {
+  }
+
+  @Override
+  public void setAst(LessSource key, String content, Object value) {
+    File file = toFile(key);
+    if (file == null || content == null || !(value instanceof ASTCssNode))
+      return;
+
+    Fingerprint fingerprint = parsedFingerprint(key);
+    byte[] contentHash = sha1(content);
+
+    try {
+      if (!directory.exists() && !directory.mkdirs())
+        return;
+
+      byte[] tree = serializer.write((ASTCssNode) value);
+      // write into temporary file first, so nobody reads half written tree
+      File temporary = File.createTempFile("less4j", ".tmp", directory);
+      try {
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(temporary));
+        try {
+          DataOutputStream data = new DataOutputStream(output);
+          writeHeader(data, fingerprint, contentHash);
+          data.writeInt(tree.length);
+          data.writeLong(checksum(tree));
+          data.write(tree);
+          data.flush();
+        } finally {
+          output.close();
+        }
+        if (!temporary.renameTo(file)) {
+          file.delete();
+          temporary.renameTo(file);
+        }
+      } finally {
+        temporary.delete();
+      }
+    } catch (IOException ex) {
+      // cache is only an optimization, tree is not stored
+    }
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  private void writeHeader(DataOutputStream output, Fingerprint fingerprint, byte[] contentHash) throws IOException {
+    output.writeBoolean(fingerprint != null);
+    if (fingerprint != null) {
+      output.writeLong(fingerprint.getLastModified());
+      output.writeLong(fingerprint.getSize());
+    }
+    output.write(contentHash);
+    output.flush();
+  }
+
+  /**
+   * @return tree bytes or <code>null</code> if they do not match their checksum
+   */
+  private byte[] readTree(DataInputStream input, long fileLength) throws IOException {
+    int length = input.readInt();
+    long checksum = input.readLong();
+    if (length < 0 || length > fileLength)
+      return null;
+
+    byte[] tree = new byte[length];
+    input.readFully(tree);
+    return checksum(tree) == checksum ? tree : null;
+  }
+
+  private long checksum(byte[] data) {
+    CRC32 result = new CRC32();
+    result.update(data);
+    return result.getValue();
+  }
+
+  /**
+   * Source with unchanged fingerprint is not read. Otherwise, the tree is still valid if the 
+   * source content remained the same, e.g., file was only touched or checked out again.
+   */
+  private boolean isValid(DataInputStream input, LessSource key) throws IOException {
+    Fingerprint fingerprint = null;
+    if (input.readBoolean())
+      fingerprint = new Fingerprint(input.readLong(), input.readLong());
+    byte[] storedHash = new byte[HASH_LENGTH];
+    input.readFully(storedHash);
+
+    if (fingerprint != null && fingerprint.equals(currentFingerprint(key)))
+      return true;
+
+    byte[] contentHash = contentHash(key);
+    return contentHash != null && Arrays.equals(storedHash, contentHash);
+  }
+
+  /**
+   * Fingerprint of the source at the time it was read - the source may have changed since.
+   */
+  private Fingerprint parsedFingerprint(LessSource key) {
+    if (!(key instanceof AbstractHierarchicalSource))
+      return null;
+
+    AbstractHierarchicalSource source = (AbstractHierarchicalSource) key;
+    return source.getContentFingerprint() != null ? source.getContentFingerprint() : source.getFingerprint();
+  }
+
+  private Fingerprint currentFingerprint(LessSource key) {
+    return key instanceof AbstractHierarchicalSource ? ((AbstractHierarchicalSource) key).getFingerprint() : null;
+  }
+
+  private File toFile(LessSource key) {
+    String location = location(key);
+    if (location == null)
+      return null;
+
+    return new File(directory, toHex(sha1(location)) + SUFFIX);
+  }
+
+  private String location(LessSource key) {
+    if (key instanceof FileSource)
+      return FileSource.class.getName() + ":" + ((FileSource) key).getInputFile().getAbsolutePath();
+
+    URI uri = key.getURI();
+    if (uri != null)
+      return key.getClass().getName() + ":" + uri;
+
+    String name = key.getName();
+    return name == null ? null : key.getClass().getName() + ":" + name;
+  }
+
+  private byte[] contentHash(LessSource key) {
+    try {
+      return sha1(key.getContent());
+    } catch (FileNotFound ex) {
+      return null;
+    } catch (CannotReadFile ex) {
+      return null;
+    }
+  }
+
+  private byte[] sha1(String text) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      return digest.digest(text.getBytes("UTF-8"));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private String toHex(byte[] bytes) {
+    StringBuilder result = new StringBuilder();
+    for (byte b : bytes) {
+      result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return result.toString();
+  }
+
+}
@@ -0,0 +1,267 @@
+package com.github.sommeri.less4j.core;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.github.sommeri.less4j.Less4jException;
+import com.github.sommeri.less4j.LessCompiler;
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.LessSource.FileSource;
+import com.github.sommeri.less4j.core.parser.ANTLRParser;
+
+/**
+ * Thread safe compiler that remembers compiled sheets and files they import. When some of
+ * those files change, {@link #recompile(Collection)} compiles again only sheets that depend
+ * on them. Parsed files are kept in {@link BoundedAstCache}, so only changed files are parsed
+ * again and everything else is reused.
+ *
+ * Sheets compiled by this compiler are called entry points. Each entry point is recompiled
+ * with the same configuration it was compiled with the last time. Configurations without
+ * cache get the compiler one. Configuration with its own cache is compiled with that
+ * cache, but it is not invalidated by {@link #recompile(Collection)}.
+ *
+ * Only sources with file or uri are remembered as entry points. Other sources, e.g., strings
+ * passed to {@link #compile(String)}, are compiled the same way, but forgotten afterwards -
+ * they can not change and remembering all of them would keep their content forever.
+ *
+ */
+public class IncrementalLessCompiler implements LessCompiler {
+
+  private final ANTLRParser parser = new ANTLRParser();
+  private final BoundedAstCache cache;
+
+  private final Map<LessSource, EntryPoint> entryPoints = new LinkedHashMap<LessSource, EntryPoint>();
+  private final Map<LessSource, Long> fingerprints = new HashMap<LessSource, Long>();
+
+  public IncrementalLessCompiler() {
+    this(new BoundedAstCache());
+  }
+
+  public IncrementalLessCompiler(BoundedAstCache cache) {
+    this.cache = cache;
+  }
+
+  @Override
+  public CompilationResult compile(String lessContent) throws Less4jException {
+    return compile(new LessSource.StringSource(lessContent), null);
+  }
+
+  @Override
+  public CompilationResult compile(String lessContent, Configuration options) throws Less4jException {
+    return compile(new LessSource.StringSource(lessContent), options);
+  }
+
+  @Override
+  public CompilationResult compile(File lessFile) throws Less4jException {
+    return compile(new LessSource.FileSource(lessFile), null);
+  }
+
+  @Override
+  public CompilationResult compile(File lessFile, Configuration options) throws Less4jException {
+    return compile(new LessSource.FileSource(lessFile, "utf-8"), options);
+  }
+
+  @Override
+  public CompilationResult compile(URL lessURL) throws Less4jException {
+    return compile(new LessSource.URLSource(lessURL));
+  }
+
+  @Override
+  public CompilationResult compile(URL lessURL, Configuration options) throws Less4jException {
+    return compile(new LessSource.URLSource(lessURL), options);
+  }
+
+  @Override
+  public CompilationResult compile(LessSource source) throws Less4jException {
+    return compile(source, new Configuration());
+  }
+
+  /**
+   * Compiles the source and remembers it as an entry point if it has file or uri. Entry point
+   * is remembered also if the compilation fails.
+   */
+  @Override
+  public CompilationResult compile(LessSource source, Configuration options) throws Less4jException {
+    // remembers configuration of the caller, cache is added only to the compiled copy
+    Configuration configuration = options == null ? new Configuration() : options;
+    Compilation compilation = new Compilation(parser, withCache(configuration));
+    try {
+      return compilation.compile(source);
+    } finally {
+      if (isRemembered(source))
+        register(source, configuration, compilation.getImportedSources());
+    }
+  }
+
+  /**
+   * Drops cached trees of changed sources and compiles again all entry points that depend
+   * on them. Entry points are compiled in the order in which they were compiled for the first
+   * time.
+   *
+   * @throws Less4jException of the first entry point that failed to compile, entry points
+   * after it are not compiled. Use {@link #getAffectedEntryPoints(Collection)} if you need to
+   * handle errors of each entry point separately.
+   */
+  public Map<LessSource, CompilationResult> recompile(Collection<? extends LessSource> changedSources) throws Less4jException {
+    Map<LessSource, CompilationResult> result = new LinkedHashMap<LessSource, CompilationResult>();
+    for (LessSource entryPoint : getAffectedEntryPoints(changedSources)) {
+      result.put(entryPoint, compile(entryPoint, getConfiguration(entryPoint)));
+    }
+    return result;
+  }
+
+  /**
+   * Drops cached trees of changed sources and returns entry points that depend on them.
+   * Compile them again using {@link #compile(LessSource, Configuration)} with configuration
+   * returned by {@link #getConfiguration(LessSource)}.
+   */
+  public List<LessSource> getAffectedEntryPoints(Collection<? extends LessSource> changedSources) {
+    for (LessSource changed : changedSources) {
+      cache.invalidate(changed);
+    }
+
+    List<LessSource> result = new ArrayList<LessSource>();
+    synchronized (this) {
+      for (Entry<LessSource, EntryPoint> entry : entryPoints.entrySet()) {
+        if (entry.getValue().dependsOnAny(entry.getKey(), changedSources))
+          result.add(entry.getKey());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Files used by remembered entry points that were modified since they were compiled the last
+   * time. Only {@link FileSource} sources are checked - this compiler knows nothing about
+   * modification time of other sources.
+   */
+  public synchronized List<LessSource> findModifiedSources() {
+    List<LessSource> result = new ArrayList<LessSource>();
+    for (Entry<LessSource, Long> entry : fingerprints.entrySet()) {
+      if (currentLastModified(entry.getKey()) != entry.getValue())
+        result.add(entry.getKey());
+    }
+    return result;
+  }
+
+  public synchronized Set<LessSource> getEntryPoints() {
+    return new HashSet<LessSource>(entryPoints.keySet());
+  }
+
+  /**
+   * @return sources imported by the entry point when it was compiled the last time
+   */
+  public synchronized Set<LessSource> getDependencies(LessSource entryPoint) {
+    EntryPoint known = entryPoints.get(entryPoint);
+    return known == null ? new HashSet<LessSource>() : new HashSet<LessSource>(known.dependencies);
+  }
+
+  public synchronized Configuration getConfiguration(LessSource entryPoint) {
+    EntryPoint known = entryPoints.get(entryPoint);
+    return known == null ? null : known.configuration;
+  }
+
+  /**
+   * Forget the entry point, it will not be recompiled anymore.
+   */
+  public synchronized void remove(LessSource entryPoint) {
+    EntryPoint removed = entryPoints.remove(entryPoint);
+    if (removed != null) {
+      forgetUnusedFingerprints(removed.dependencies);
+      forgetUnusedFingerprints(Collections.singleton(entryPoint));
+    }
+  }
+
+  public BoundedAstCache getCache() {
+    return cache;
+  }
+
+  private boolean isRemembered(LessSource source) {
+    return source instanceof FileSource || source.getURI() != null;
+  }
+
+  private synchronized void register(LessSource source, Configuration configuration, Set<LessSource> dependencies) {
+    EntryPoint previous = entryPoints.get(source);
+    if (previous == null) {
+      entryPoints.put(source, new EntryPoint(configuration, dependencies));
+    } else {
+      // keeps the order of the first compilation
+      Set<LessSource> removed = previous.dependencies;
+      removed.removeAll(dependencies);
+      previous.configuration = configuration;
+      previous.dependencies = new HashSet<LessSource>(dependencies);
+      forgetUnusedFingerprints(removed);
+    }
+
+    rememberFingerprint(source);
+    for (LessSource dependency : dependencies) {
+      rememberFingerprint(dependency);
+    }
+  }
+
+  private void forgetUnusedFingerprints(Collection<LessSource> sources) {
+    for (LessSource source : sources) {
+      if (!isUsed(source))
+        fingerprints.remove(source);
+    }
+  }
+
+  private boolean isUsed(LessSource source) {
+    for (Entry<LessSource, EntryPoint> entry : entryPoints.entrySet()) {
+      if (entry.getKey().equals(source) || entry.getValue().dependencies.contains(source))
+        return true;
+    }
+    return false;
+  }
+
+  private void rememberFingerprint(LessSource source) {
+    if (!(source instanceof FileSource))
+      return;
+
+    // modification time of the file at the time it was read, file may have changed since
+    FileSource fileSource = (FileSource) source;
+    long lastModified = fileSource.getLastModified() != 0 ? fileSource.getLastModified() : currentLastModified(fileSource);
+    fingerprints.put(source, lastModified);
+  }
+
+  private long currentLastModified(LessSource source) {
+    return ((FileSource) source).getInputFile().lastModified();
+  }
+
+  private Configuration withCache(Configuration options) {
+    if (options.getCache() == null)
+      return new Configuration(options).setCache(cache);
+    return options;
+  }
+
+  private static class EntryPoint {
+
+    private Configuration configuration;
+    private Set<LessSource> dependencies;
+
+    public EntryPoint(Configuration configuration, Set<LessSource> dependencies) {
+      this.configuration = configuration;
+      this.dependencies = new HashSet<LessSource>(dependencies);
+    }
+
+    public boolean dependsOnAny(LessSource self, Collection<? extends LessSource> sources) {
+      for (LessSource source : sources) {
+        if (self.equals(source) || dependencies.contains(source))
+          return true;
+      }
+      return false;
+    }
+
+  }
+
+}
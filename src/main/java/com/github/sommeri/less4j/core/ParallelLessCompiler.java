@@ -0,0 +1,114 @@
+package com.github.sommeri.less4j.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.github.sommeri.less4j.Less4jException;
+import com.github.sommeri.less4j.LessCompiler;
+import com.github.sommeri.less4j.LessCompiler.Cache;
+import com.github.sommeri.less4j.LessCompiler.CompilationResult;
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessSource;
+
+/**
+ * Compiles multiple less sheets concurrently on supplied executor. All compilations share
+ * one thread safe cache of parsed abstract syntax trees, so files imported by multiple 
+ * sheets are parsed only once. 
+ * 
+ * Each compile method returns one future per compiled sheet, in the same order as sheets 
+ * were supplied. If the compilation failed, future <code>get</code> method throws 
+ * {@link ExecutionException} with {@link Less4jException} as its cause.
+ * 
+ * Unless specified otherwise, the shared cache is {@link BoundedAstCache} with default limits.
+ * Configurations without cache get the shared one. Configuration with its own cache is 
+ * compiled with that cache - it is up to the caller to make sure it is thread safe. 
+ * 
+ */
+public class ParallelLessCompiler {
+
+  private final Executor executor;
+  private final Cache cache;
+  private final LessCompiler compiler;
+
+  public ParallelLessCompiler(Executor executor) {
+    this(executor, new BoundedAstCache());
+  }
+
+  public ParallelLessCompiler(Executor executor, Cache cache) {
+    this(executor, cache, new DefaultLessCompiler());
+  }
+
+  /**
+   * @param compiler compiler used to compile each sheet, it must be thread safe
+   */
+  public ParallelLessCompiler(Executor executor, Cache cache, LessCompiler compiler) {
+    this.executor = executor;
+    this.cache = cache;
+    this.compiler = compiler;
+  }
+
+  public Future<CompilationResult> compile(LessSource source, Configuration options) {
+    return submit(source, withSharedCache(options));
+  }
+
+  public List<Future<CompilationResult>> compile(Collection<? extends LessSource> sources) {
+    return compile(sources, new Configuration());
+  }
+
+  /**
+   * Compiles all sources with the same configuration. 
+   */
+  public List<Future<CompilationResult>> compile(Collection<? extends LessSource> sources, Configuration options) {
+    Configuration shared = withSharedCache(options);
+    List<Future<CompilationResult>> result = new ArrayList<Future<CompilationResult>>(sources.size());
+    for (LessSource source : sources) {
+      result.add(submit(source, shared));
+    }
+    return result;
+  }
+
+  /**
+   * Compiles each source with its own configuration. Use this if configurations differ e.g., 
+   * in css result location. 
+   */
+  public List<Future<CompilationResult>> compile(Map<? extends LessSource, Configuration> sources) {
+    List<Future<CompilationResult>> result = new ArrayList<Future<CompilationResult>>(sources.size());
+    for (Entry<? extends LessSource, Configuration> entry : sources.entrySet()) {
+      result.add(submit(entry.getKey(), withSharedCache(entry.getValue())));
+    }
+    return result;
+  }
+
+  public Cache getCache() {
+    return cache;
+  }
+
+  private Future<CompilationResult> submit(final LessSource source, final Configuration options) {
+    FutureTask<CompilationResult> task = new FutureTask<CompilationResult>(new Callable<CompilationResult>() {
+      @Override
+      public CompilationResult call() throws Less4jException {
+        return compiler.compile(source, options);
+      }
+    });
+    executor.execute(task);
+    return task;
+  }
+
+  private Configuration withSharedCache(Configuration options) {
+    if (options == null)
+      return new Configuration().setCache(cache);
+    // caller's configuration stays untouched
+    if (options.getCache() == null)
+      return new Configuration(options).setCache(cache);
+    return options;
+  }
+
+}
@@ -22,6 +22,7 @@ public class TimeoutedLessCompiler implements LessCompiler {
   private final TimeUnit unit;
   private final long afterInterruptTimeout;
   private final TimeUnit afterInterruptUnit;
+  private final LessCompiler compiler = new DefaultLessCompiler();
 
   public TimeoutedLessCompiler(long timeout, TimeUnit unit) {
     this(timeout, unit, 80, TimeUnit.MILLISECONDS);
@@ -78,8 +79,6 @@ public class TimeoutedLessCompiler implements LessCompiler {
 
     Callable<CompilationResult> task = new Callable<CompilationResult>() {
       public CompilationResult call() {
-
-        ThreadUnsafeLessCompiler compiler = new ThreadUnsafeLessCompiler();
         try {
           return compiler.compile(iSource, iOption);
         } catch (Less4jException ex) {
@@ -1,23 +1,31 @@
 package com.github.sommeri.less4j.core.ast;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.core.AstSerializer;
 import com.github.sommeri.less4j.core.ast.annotations.NotAstProperty;
 import com.github.sommeri.less4j.core.parser.HiddenTokenAwareTree;
 import com.github.sommeri.less4j.utils.PubliclyCloneable;
 
-public abstract class ASTCssNode implements PubliclyCloneable {
+public abstract class ASTCssNode implements PubliclyCloneable, Serializable {
 
   private ASTCssNode parent;
   private boolean isSilent = false;
   //I'm using underlying structure as identified in cycle detector. If it stops to be identifying,
   //cycle detector must be modified. !
   private HiddenTokenAwareTree underlyingStructure;
-  private List<Comment> openingComments = new ArrayList<Comment>();
-  private List<Comment> orphanComments = new ArrayList<Comment>();
-  private List<Comment> trailingComments = new ArrayList<Comment>();
+  private transient List<Comment> openingComments = new ArrayList<Comment>();
+  private transient List<Comment> orphanComments = new ArrayList<Comment>();
+  private transient List<Comment> trailingComments = new ArrayList<Comment>();
+  // comment lists are shared between node and its clones until one of them adds a comment,
+  // lists returned by getters must not be modified directly
+  private transient boolean sharedComments = false;
 
   public ASTCssNode(HiddenTokenAwareTree underlyingStructure) {
     this.underlyingStructure = underlyingStructure;
@@ -78,10 +86,12 @@ public abstract class ASTCssNode implements PubliclyCloneable {
   }
 
   public void addTrailingComments(List<Comment> comments) {
+    ownComments();
     this.trailingComments.addAll(comments);
   }
 
   public void addTrailingComment(Comment comment) {
+    ownComments();
     this.trailingComments.add(comment);
   }
 
@@ -95,6 +105,7 @@ public abstract class ASTCssNode implements PubliclyCloneable {
   }
 
   public void addOpeningComments(List<Comment> openingComments) {
+    ownComments();
     this.openingComments.addAll(openingComments);
   }
 
@@ -128,10 +139,10 @@ public abstract class ASTCssNode implements PubliclyCloneable {
   @Override
   public ASTCssNode clone() {
     try {
+      // cached trees are cloned concurrently, do not write into them unless needed
+      if (!sharedComments)
+        sharedComments = true;
       ASTCssNode clone = (ASTCssNode) super.clone();
-      clone.setOpeningComments(new ArrayList<Comment>(getOpeningComments()));
-      clone.setOrphanComments(new ArrayList<Comment>(getOrphanComments()));
-      clone.setTrailingComments(new ArrayList<Comment>(getTrailingComments()));
       clone.setParent(null);
       return clone;
     } catch (CloneNotSupportedException e) {
@@ -139,6 +150,47 @@ public abstract class ASTCssNode implements PubliclyCloneable {
     }
   }
 
+  private void ownComments() {
+    if (!sharedComments)
+      return;
+
+    openingComments = new ArrayList<Comment>(openingComments);
+    orphanComments = new ArrayList<Comment>(orphanComments);
+    trailingComments = new ArrayList<Comment>(trailingComments);
+    sharedComments = false;
+  }
+
+  // comment lists are written inline, most of them are empty
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    writeComments(out, openingComments);
+    writeComments(out, orphanComments);
+    writeComments(out, trailingComments);
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    openingComments = readComments(in);
+    orphanComments = readComments(in);
+    trailingComments = readComments(in);
+  }
+
+  private void writeComments(ObjectOutputStream out, List<Comment> comments) throws IOException {
+    AstSerializer.writeVarint(out, comments.size());
+    for (Comment comment : comments) {
+      out.writeObject(comment);
+    }
+  }
+
+  private List<Comment> readComments(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    int size = AstSerializer.readLength(in);
+    List<Comment> result = new ArrayList<Comment>(size);
+    for (int i = 0; i < size; i++) {
+      result.add((Comment) in.readObject());
+    }
+    return result;
+  }
+
   public void configureParentToAllChilds() {
     List<? extends ASTCssNode> childs = getChilds();
     for (ASTCssNode kid : childs) {
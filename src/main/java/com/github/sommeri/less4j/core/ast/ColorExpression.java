@@ -10,6 +10,9 @@ import com.github.sommeri.less4j.utils.PrintUtils;
 
 public class ColorExpression extends Expression {
 
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  // computed colors are formatted lazily, most of them are used only by other color functions
   protected String value;
   protected double red;
   protected double green;
@@ -20,7 +23,6 @@ public class ColorExpression extends Expression {
     red = colorExpression.red;
     green = colorExpression.green;
     blue = colorExpression.blue;
-    this.value = encode(red, green, blue);
   }
 
   public ColorExpression(HiddenTokenAwareTree token, double red, double green, double blue) {
@@ -28,7 +30,6 @@ public class ColorExpression extends Expression {
     this.red = red;
     this.green = green;
     this.blue = blue;
-    this.value = encode(red, green, blue);
   }
 
   public ColorExpression(HiddenTokenAwareTree token, String value, double red, double green, double blue) {
@@ -40,9 +41,23 @@ public class ColorExpression extends Expression {
   }
 
   public String getValue() {
+    if (value == null)
+      value = encodeValue();
     return value;
   }
 
+  /**
+   * @return <code>true</code> if printed form of the color is known, e.g. it was written in the sheet
+   *   or already formatted. Other colors print in the form derived from their channels.
+   */
+  public boolean isFormatted() {
+    return value != null || isNamed();
+  }
+
+  protected String encodeValue() {
+    return encode(red, green, blue);
+  }
+
   public boolean isShorthand() {
     String value = getValue();
     return !isNamed() && value!=null && value.length() < 7;
@@ -85,14 +100,32 @@ public class ColorExpression extends Expression {
   }
 
   private String encode(double red, double green, double blue) {
-    return "#" + toHex(red) + toHex(green) + toHex(blue);
+    StringBuilder result = new StringBuilder(7).append('#');
+    appendHex(result, red);
+    appendHex(result, green);
+    appendHex(result, blue);
+    return result.toString();
   }
 
   protected String toHex(double color) {
-    String prefix = "";
+    StringBuilder result = new StringBuilder(2);
+    appendHex(result, color);
+    return result.toString();
+  }
+
+  protected void appendHex(StringBuilder result, double color) {
     if (color < 16)
-      prefix = "0";
-    return prefix + Integer.toHexString((int) Math.round(color));
+      result.append('0');
+
+    int rounded = (int) Math.round(color);
+    if (rounded < 0 || rounded > 255) {
+      result.append(Integer.toHexString(rounded));
+      return;
+    }
+
+    if (rounded >= 16)
+      result.append(HEX_DIGITS[rounded >> 4]);
+    result.append(HEX_DIGITS[rounded & 15]);
   }
 
   @Override
@@ -108,7 +141,7 @@ public class ColorExpression extends Expression {
 
   @Override
   public String toString() {
-    return "" + value;
+    return "" + getValue();
   }
 
   @Override
@@ -117,7 +150,11 @@ public class ColorExpression extends Expression {
   }
 
   public String toARGB() {
-    return "#ff" + toHex(red) + toHex(green) + toHex(blue);
+    StringBuilder result = new StringBuilder(9).append("#ff");
+    appendHex(result, red);
+    appendHex(result, green);
+    appendHex(result, blue);
+    return result.toString();
   }
 
   public Color toColor() {
@@ -142,19 +179,19 @@ public class ColorExpression extends Expression {
      * Alpha in the range 0-1.
      */
     private double alpha;
+    // opaque colors created from channels are printed as hexadecimal
+    private boolean printAlpha;
 
     public ColorWithAlphaExpression(HiddenTokenAwareTree token, ColorExpression colorExpression) {
       super(token, colorExpression);
       alpha = colorExpression.getAlpha();
-      this.value = encode(red, green, blue, alpha);
+      printAlpha = true;
     }
 
     public ColorWithAlphaExpression(HiddenTokenAwareTree token, double red, double green, double blue, double alpha) {
       super(token, red, green, blue);
       this.alpha = alpha;
-      if (alpha != 1.0) {
-        this.value = encode(red, green, blue, alpha);
-      }
+      printAlpha = alpha != 1.0;
     }
 
     public ColorWithAlphaExpression(HiddenTokenAwareTree token, String originalValue, double red, double green, double blue, double alpha) {
@@ -167,8 +204,15 @@ public class ColorExpression extends Expression {
       return alpha;
     }
 
+    @Override
+    protected String encodeValue() {
+      return printAlpha ? encode(red, green, blue, alpha) : super.encodeValue();
+    }
+
     protected String encode(double red, double green, double blue, double alpha) {
-      return "rgba(" + roundFormat(red) + ", " + roundFormat(green) + ", " + roundFormat(blue) + ", " + roundFormatAlpha(alpha) + ")";
+      StringBuilder result = new StringBuilder(32).append("rgba(");
+      result.append(Math.round(red)).append(", ").append(Math.round(green)).append(", ").append(Math.round(blue)).append(", ");
+      return result.append(roundFormatAlpha(alpha)).append(')').toString();
     }
 
     //alpha colors do not have hexadecimal value for now
@@ -177,17 +221,18 @@ public class ColorExpression extends Expression {
       return getValue();
     }
     
-    private String roundFormat(double value) {
-      return PrintUtils.formatNumber(Math.round(value));
-    }
-
     private String roundFormatAlpha(double value) {
       return PrintUtils.formatNumberTwoDecimal(Math.round(value*1000000)/1000000.0);
     }
 
     @Override
     public String toARGB() {
-      return "#" + toHex(Math.round(alpha * 255)) + toHex(red) + toHex(green) + toHex(blue);
+      StringBuilder result = new StringBuilder(9).append('#');
+      appendHex(result, Math.round(alpha * 255));
+      appendHex(result, red);
+      appendHex(result, green);
+      appendHex(result, blue);
+      return result.toString();
     }
 
     @Override
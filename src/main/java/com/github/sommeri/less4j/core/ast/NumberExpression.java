@@ -1,9 +1,11 @@
 package com.github.sommeri.less4j.core.ast;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import com.github.sommeri.less4j.core.ast.annotations.NotAstProperty;
 import com.github.sommeri.less4j.core.parser.HiddenTokenAwareTree;
@@ -11,10 +13,37 @@ import com.github.sommeri.less4j.core.parser.HiddenTokenAwareTree;
 //the system would be nicer and more consistent if they all would be cloneable. 
 public class NumberExpression extends Expression implements Cloneable {
 
+  private static final int NO_UNIT = -1;
+  // units known to conversion tables are interned into indexes into these arrays
+  private static final Map<String, Integer> UNITS = new HashMap<String, Integer>();
+  private static final List<String> UNIT_NAMES = new ArrayList<String>();
+  private static final List<Dimension> UNIT_DIMENSIONS = new ArrayList<Dimension>();
+  private static final double[] UNIT_FACTORS;
+  static {
+    List<Double> factors = new ArrayList<Double>();
+    for (Dimension dimension : Dimension.values()) {
+      for (Entry<String, Number> conversion : dimension.getConversions().entrySet()) {
+        // empty suffix never converts
+        if (!conversion.getKey().isEmpty() && !UNITS.containsKey(conversion.getKey())) {
+          UNITS.put(conversion.getKey(), UNIT_NAMES.size());
+          UNIT_NAMES.add(conversion.getKey());
+          UNIT_DIMENSIONS.add(dimension);
+          factors.add(conversion.getValue().doubleValue());
+        }
+      }
+    }
+    UNIT_FACTORS = new double[factors.size()];
+    for (int i = 0; i < UNIT_FACTORS.length; i++) {
+      UNIT_FACTORS[i] = factors.get(i);
+    }
+  }
+
   private String originalString;
   private Dimension dimension = Dimension.NUMBER;
-  private Double valueAsDouble;
+  // NaN if the number has no value e.g., repeater
+  private double value = Double.NaN;
   private String suffix = "";
+  private int unit = NO_UNIT;
   private boolean expliciteSign = false;
 
   public NumberExpression(HiddenTokenAwareTree token) {
@@ -36,10 +65,19 @@ public class NumberExpression extends Expression implements Cloneable {
     this.expliciteSign = expliciteSign;
   }
 
-  public NumberExpression(HiddenTokenAwareTree token, Double valueAsDouble, String suffix, String originalString, Dimension dimension) {
+  public NumberExpression(HiddenTokenAwareTree token, double value, String suffix, String originalString, Dimension dimension) {
     this(token, originalString, dimension);
-    this.valueAsDouble = valueAsDouble;
-    this.suffix = suffix;
+    this.value = value;
+    setSuffix(suffix);
+  }
+
+  /**
+   * @deprecated use {@link #NumberExpression(HiddenTokenAwareTree, double, String, String, Dimension)},
+   *             <code>null</code> value is stored as <code>NaN</code>
+   */
+  @Deprecated
+  public NumberExpression(HiddenTokenAwareTree token, Double valueAsDouble, String suffix, String originalString, Dimension dimension) {
+    this(token, valueAsDouble == null ? Double.NaN : valueAsDouble.doubleValue(), suffix, originalString, dimension);
   }
 
   public String getOriginalString() {
@@ -54,12 +92,33 @@ public class NumberExpression extends Expression implements Cloneable {
     return dimension;
   }
 
+  /**
+   * @return value of the number or <code>NaN</code> if the number has no value e.g., repeater
+   */
+  public double getValue() {
+    return value;
+  }
+
+  public void setValue(double value) {
+    this.value = value;
+  }
+
+  /**
+   * @deprecated use {@link #getValue()}, it does not box the value
+   * @return value of the number or <code>null</code> if the number has no value or the value is
+   *         <code>NaN</code>
+   */
+  @Deprecated
   public Double getValueAsDouble() {
-    return valueAsDouble;
+    return Double.isNaN(value) ? null : Double.valueOf(value);
   }
 
+  /**
+   * @deprecated use {@link #setValue(double)}, <code>null</code> is stored as <code>NaN</code>
+   */
+  @Deprecated
   public void setValueAsDouble(Double number) {
-    this.valueAsDouble = number;
+    this.value = number == null ? Double.NaN : number.doubleValue();
   }
 
   public void setDimension(Dimension dimension) {
@@ -80,57 +139,78 @@ public class NumberExpression extends Expression implements Cloneable {
 
   public void setSuffix(String suffix) {
     this.suffix = suffix;
+    this.unit = toUnit(suffix);
   }
 
   public void negate() {
-    if (valueAsDouble == null)
-      return;
-
-    valueAsDouble = valueAsDouble * -1;
+    value = value * -1;
   }
 
   public boolean convertibleTo(NumberExpression second) {
     String toSuffix = second.getSuffix();
-    return convertibleTo(toSuffix);
+    if (isSameOrNoSuffix(toSuffix))
+      return true;
+
+    return convertibleTo(second.unit);
   }
 
   public boolean convertibleTo(String toSuffix) {
-    String fromSuffix = getSuffix();
-    if (toSuffix==null || toSuffix.isEmpty() || fromSuffix==null || fromSuffix.isEmpty())
+    if (isSameOrNoSuffix(toSuffix))
       return true;
 
-    fromSuffix = fromSuffix.toLowerCase();
-    toSuffix = toSuffix.toLowerCase();
-    if (fromSuffix.equals(toSuffix))
+    return convertibleTo(toUnit(toSuffix));
+  }
+
+  private boolean convertibleTo(int toUnit) {
+    return unit != NO_UNIT && toUnit != NO_UNIT && UNIT_DIMENSIONS.get(unit) == getDimension() && UNIT_DIMENSIONS.get(toUnit) == getDimension();
+  }
+
+  private boolean isSameOrNoSuffix(String toSuffix) {
+    String fromSuffix = getSuffix();
+    if (toSuffix == null || toSuffix.isEmpty() || fromSuffix == null || fromSuffix.isEmpty())
       return true;
 
-    Map<String, Number> conversions = getDimension().getConversions();
-    return conversions.containsKey(toSuffix.toLowerCase()) && conversions.containsKey(fromSuffix.toLowerCase());
+    return fromSuffix.equalsIgnoreCase(toSuffix);
+  }
+
+  /**
+   * Same as <code>convertIfPossible(toSuffix).getValue()</code>, but does not create new
+   * number.
+   */
+  public double getValueConvertedTo(String toSuffix) {
+    if (isSameOrNoSuffix(toSuffix))
+      return getValue();
+
+    int toUnit = toUnit(toSuffix);
+    if (!convertibleTo(toUnit))
+      return getValue();
+
+    return getValue() * UNIT_FACTORS[unit] / UNIT_FACTORS[toUnit];
   }
 
   public NumberExpression convertIfPossible(String toSuffix) {
-    String fromSuffix = getSuffix();
-    if (toSuffix==null || toSuffix.isEmpty() || fromSuffix==null || fromSuffix.isEmpty())
+    if (isSameOrNoSuffix(toSuffix))
       return this;
 
-    fromSuffix = fromSuffix.toLowerCase();
-    toSuffix = toSuffix.toLowerCase();
-    if (fromSuffix.equals(toSuffix))
+    int toUnit = toUnit(toSuffix);
+    if (!convertibleTo(toUnit))
       return this;
 
-    Map<String, Number> conversions = getDimension().getConversions();
-    Number multiplier = conversions.get(fromSuffix);
-    Number divisor = conversions.get(toSuffix);
+    HiddenTokenAwareTree token = getUnderlyingStructure();
+    String unitName = UNIT_NAMES.get(toUnit);
+    return new NumberExpression(token, getValue() * UNIT_FACTORS[unit] / UNIT_FACTORS[toUnit], unitName, null, Dimension.forSuffix(unitName));
+  }
 
-    if (multiplier != null && divisor != null) {
-      HiddenTokenAwareTree token = getUnderlyingStructure();
-      Double value = getValueAsDouble();
-      return new NumberExpression(token, value * multiplier.doubleValue() / divisor.doubleValue(), toSuffix, null, Dimension.forSuffix(toSuffix));
-    } else {
-      return this;
-    }
+  private static int toUnit(String suffix) {
+    if (suffix == null || suffix.isEmpty())
+      return NO_UNIT;
 
+    Integer result = UNITS.get(suffix);
+    if (result == null)
+      result = UNITS.get(suffix.toLowerCase());
+    return result == null ? NO_UNIT : result;
   }
+
   @Override
   @NotAstProperty
   public List<? extends ASTCssNode> getChilds() {
@@ -240,7 +320,7 @@ public class NumberExpression extends Expression implements Cloneable {
     if (originalString != null)
       return originalString;
 
-    return "" + valueAsDouble + suffix;
+    return "" + value + suffix;
   }
 
   @Override
@@ -250,7 +330,8 @@ public class NumberExpression extends Expression implements Cloneable {
     result = prime * result + ((dimension == null) ? 0 : dimension.hashCode());
     result = prime * result + (expliciteSign ? 1231 : 1237);
     result = prime * result + ((suffix == null) ? 0 : suffix.hashCode());
-    result = prime * result + ((valueAsDouble == null) ? 0 : valueAsDouble.hashCode());
+    long bits = Double.doubleToLongBits(value);
+    result = prime * result + (int) (bits ^ (bits >>> 32));
     return result;
   }
 
@@ -272,10 +353,7 @@ public class NumberExpression extends Expression implements Cloneable {
         return false;
     } else if (!suffix.equals(other.suffix))
       return false;
-    if (valueAsDouble == null) {
-      if (other.valueAsDouble != null)
-        return false;
-    } else if (!valueAsDouble.equals(other.valueAsDouble))
+    if (Double.doubleToLongBits(value) != Double.doubleToLongBits(other.value))
       return false;
     return true;
   }
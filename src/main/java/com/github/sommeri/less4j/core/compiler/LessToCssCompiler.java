@@ -25,17 +25,25 @@ import com.github.sommeri.less4j.core.compiler.stages.ImportsAndScopeSolver;
 import com.github.sommeri.less4j.core.compiler.stages.DirectiveBubblerAndMerger;
 import com.github.sommeri.less4j.core.compiler.stages.PropertiesMerger;
 import com.github.sommeri.less4j.core.compiler.stages.ReferencesSolver;
+import com.github.sommeri.less4j.core.compiler.stages.ResourcesPrefetcher;
 import com.github.sommeri.less4j.core.compiler.stages.UnNestingAndBubbling;
 import com.github.sommeri.less4j.core.compiler.stages.UrlsAndImportsNormalizer;
 import com.github.sommeri.less4j.core.compiler.stages.UselessImportantRemover;
 import com.github.sommeri.less4j.core.problems.ProblemsHandler;
 import com.github.sommeri.less4j.core.validators.CssAstValidator;
 
+/**
+ * Compiles less abstract syntax tree into css one. Individual compilation stages are
+ * public so they can be run and measured separately, see <code>src/benchmark</code>.
+ * Stages must be called in the same order as they are called from {@link #compileToCss(StyleSheet, LessSource, Configuration)}.
+ *
+ */
 public class LessToCssCompiler {
 
   private ProblemsHandler problemsHandler;
   private Configuration configuration;
   private Set<LessSource> importedSources;
+  private ResourcesPrefetcher resourcesPrefetcher;
 
   public LessToCssCompiler(ProblemsHandler problemsHandler, Configuration configuration) {
     super();
@@ -44,9 +52,14 @@ public class LessToCssCompiler {
   }
 
   public ASTCssNode compileToCss(StyleSheet less, LessSource source, Configuration options) {
-    this.importedSources = resolveImportsAndReferences(less, source);
+    try {
+      this.importedSources = resolveImportsAndReferences(less, source);
+      evaluateExpressions(less);
+    } finally {
+      // functions reading files were evaluated
+      stopResourcesPrefetching();
+    }
     
-    evaluateExpressions(less);
     freeNestedRulesetsAndMedia(less);
     solveExtends(less);
 
@@ -67,12 +80,12 @@ public class LessToCssCompiler {
     return less;
   }
 
-  private void removeEmptyRulesetsAndMedia(StyleSheet less) {
+  public void removeEmptyRulesetsAndMedia(StyleSheet less) {
     EmptyBodiesRemover remover = new EmptyBodiesRemover();
     remover.removeEmptyBodies(less);
   }
 
-  private void finishDeclarations(StyleSheet less) {
+  public void finishDeclarations(StyleSheet less) {
     PropertiesMerger propertiesMerger = new PropertiesMerger();
     propertiesMerger.applyToProperties(less);
     
@@ -80,20 +93,21 @@ public class LessToCssCompiler {
     remover.applyToProperties(less);
   }
 
-  private void solveExtends(StyleSheet less) {
+  public void solveExtends(StyleSheet less) {
     ExtendsSolver extendsSolver = new ExtendsSolver();
     extendsSolver.solveExtends(less);
   }
 
-  private void freeNestedRulesetsAndMedia(StyleSheet less) {
+  public void freeNestedRulesetsAndMedia(StyleSheet less) {
     UnNestingAndBubbling nestingBubbling = new UnNestingAndBubbling();
     nestingBubbling.unnestRulesetsAndDirectives(less);
   }
 
-  private Set<LessSource> resolveImportsAndReferences(StyleSheet less, LessSource source) {
+  public Set<LessSource> resolveImportsAndReferences(StyleSheet less, LessSource source) {
     ImportsAndScopeSolver solver = new ImportsAndScopeSolver(problemsHandler, configuration);
     IScope scope = solver.buildImportsAndScope(less, source);
     Set<LessSource> importedSources = solver.getImportedSources();
+    startResourcesPrefetching(less);
 
     ReferencesSolver referencesSolver = new ReferencesSolver(problemsHandler, configuration);
     referencesSolver.solveReferences(less, scope);
@@ -102,7 +116,28 @@ public class LessToCssCompiler {
     return importedSources;
   }
 
-  private void removeUselessLessElements(StyleSheet node) {
+  /**
+   * Files used by data-uri and image size functions start to be read in background, if the
+   * configuration has import executor. Prefetching must be stopped by {@link #stopResourcesPrefetching()}.
+   */
+  public void startResourcesPrefetching(StyleSheet less) {
+    if (configuration.getImportExecutor() == null)
+      return;
+
+    resourcesPrefetcher = new ResourcesPrefetcher(configuration.getImportExecutor());
+    resourcesPrefetcher.prefetchResources(less);
+    resourcesPrefetcher.start();
+  }
+
+  public void stopResourcesPrefetching() {
+    if (resourcesPrefetcher == null)
+      return;
+
+    resourcesPrefetcher.stop();
+    resourcesPrefetcher = null;
+  }
+
+  public void removeUselessLessElements(StyleSheet node) {
     UselessLessElementsRemover remover = new UselessLessElementsRemover();
     remover.removeUselessLessElements(node);
   }
@@ -113,7 +148,7 @@ public class LessToCssCompiler {
     normalizer.normalizeUrlsAndImports(node);
   }
 
-  private void removeUselessCharsets(StyleSheet less) {
+  public void removeUselessCharsets(StyleSheet less) {
     ASTManipulator astManipulator = new ASTManipulator();
     Iterator<ASTCssNode> iterator = less.getChilds().iterator();
     if (!iterator.hasNext())
@@ -135,12 +170,12 @@ public class LessToCssCompiler {
     }
   }
 
-  private void finalMediaMergingAndBubbling(StyleSheet less) {
+  public void finalMediaMergingAndBubbling(StyleSheet less) {
     DirectiveBubblerAndMerger bubblerAndMerger = new DirectiveBubblerAndMerger(problemsHandler);
     bubblerAndMerger.bubbleAndMergeMedia(less);
   }
 
-  private void sortTopLevelElements(StyleSheet less) {
+  public void sortTopLevelElements(StyleSheet less) {
     Collections.sort(less.getMembers(), new Comparator<ASTCssNode>() {
 
       @Override
@@ -159,7 +194,7 @@ public class LessToCssCompiler {
     });
   }
 
-  private void evaluateExpressions(ASTCssNode node) {
+  public void evaluateExpressions(ASTCssNode node) {
     ASTManipulator manipulator = new ASTManipulator();
     if (node instanceof Expression) {
       //variables are not supposed to be there now
@@ -201,7 +236,7 @@ public class LessToCssCompiler {
     }
   }
 
-  private void validateFinalCss(StyleSheet less) {
+  public void validateFinalCss(StyleSheet less) {
     CssAstValidator validator = new CssAstValidator(problemsHandler);
     validator.validate(less);
   }
@@ -16,7 +16,7 @@ abstract class AbstractFunction implements Function {
   
   static double scaled(NumberExpression n, int size) {
     if (n.getDimension() == Dimension.PERCENTAGE) {
-      return n.getValueAsDouble() * size / 100;
+      return n.getValue() * size / 100;
     } else {
       return number(n);
     }
@@ -24,9 +24,9 @@ abstract class AbstractFunction implements Function {
 
   static double number(NumberExpression n) {
     if (n.getDimension() == Dimension.PERCENTAGE) {
-      return n.getValueAsDouble() / 100;
+      return n.getValue() / 100;
     } else {
-      return n.getValueAsDouble();
+      return n.getValue();
     }
   }
 
@@ -621,12 +621,12 @@ class Saturate extends CssNameClashMultiParameterFunction {
   }
 
   protected void applyAbsolute(NumberExpression amount, HSLAValue hsla) {
-    hsla.s += amount.getValueAsDouble() / 100.0f;
+    hsla.s += amount.getValue() / 100.0f;
     hsla.s = AbstractColorFunction.clamp(hsla.s);
   }
 
   protected void applyRelative(NumberExpression amount, HSLAValue hsla) {
-    hsla.s += hsla.s * amount.getValueAsDouble() / 100.0f;
+    hsla.s += hsla.s * amount.getValue() / 100.0f;
     hsla.s = AbstractColorFunction.clamp(hsla.s);
   }
 
@@ -665,13 +665,13 @@ class Desaturate extends AbstractColorHSLAmountFunction {
 
   @Override
   protected void applyAbsolute(NumberExpression amount, HSLAValue hsla) {
-    hsla.s -= amount.getValueAsDouble() / 100.0f;
+    hsla.s -= amount.getValue() / 100.0f;
     hsla.s = clamp(hsla.s);
   }
 
   @Override
   protected void applyRelative(NumberExpression amount, HSLAValue hsla) {
-    hsla.s -= hsla.s * amount.getValueAsDouble() / 100.0f;
+    hsla.s -= hsla.s * amount.getValue() / 100.0f;
     hsla.s = clamp(hsla.s);
   }
 
@@ -686,13 +686,13 @@ class Lighten extends AbstractColorHSLAmountFunction {
 
   @Override
   protected void applyAbsolute(NumberExpression amount, HSLAValue hsla) {
-    hsla.l += amount.getValueAsDouble() / 100.0f;
+    hsla.l += amount.getValue() / 100.0f;
     hsla.l = clamp(hsla.l);
   }
 
   @Override
   protected void applyRelative(NumberExpression amount, HSLAValue hsla) {
-    hsla.l += hsla.l * amount.getValueAsDouble() / 100.0f;
+    hsla.l += hsla.l * amount.getValue() / 100.0f;
     hsla.l = clamp(hsla.l);
   }
 
@@ -707,13 +707,13 @@ class Darken extends AbstractColorHSLAmountFunction {
 
   @Override
   protected void applyAbsolute(NumberExpression amount, HSLAValue hsla) {
-    hsla.l -= amount.getValueAsDouble() / 100.0f;
+    hsla.l -= amount.getValue() / 100.0f;
     hsla.l = clamp(hsla.l);
   }
 
   @Override
   protected void applyRelative(NumberExpression amount, HSLAValue hsla) {
-    hsla.l -= hsla.l * amount.getValueAsDouble() / 100.0f;
+    hsla.l -= hsla.l * amount.getValue() / 100.0f;
     hsla.l = clamp(hsla.l);
   }
 
@@ -728,13 +728,13 @@ class FadeIn extends AbstractColorHSLAmountFunction {
 
   @Override
   protected void applyAbsolute(NumberExpression amount, HSLAValue hsla) {
-    hsla.a += amount.getValueAsDouble() / 100.0f;
+    hsla.a += amount.getValue() / 100.0f;
     hsla.a = clamp(hsla.a);
   }
 
   @Override
   protected void applyRelative(NumberExpression amount, HSLAValue hsla) {
-    hsla.a += hsla.a * amount.getValueAsDouble() / 100.0f;
+    hsla.a += hsla.a * amount.getValue() / 100.0f;
     hsla.a = clamp(hsla.a);
   }
 
@@ -749,13 +749,13 @@ class FadeOut extends AbstractColorHSLAmountFunction {
 
   @Override
   protected void applyAbsolute(NumberExpression amount, HSLAValue hsla) {
-    hsla.a -= amount.getValueAsDouble() / 100.0f;
+    hsla.a -= amount.getValue() / 100.0f;
     hsla.a = clamp(hsla.a);
   }
 
   @Override
   protected void applyRelative(NumberExpression amount, HSLAValue hsla) {
-    hsla.a -= hsla.a * amount.getValueAsDouble() / 100.0f;
+    hsla.a -= hsla.a * amount.getValue() / 100.0f;
     hsla.a = clamp(hsla.a);
   }
 
@@ -782,7 +782,7 @@ class Fade extends AbstractColorAmountFunction {
   }
 
   protected void apply(NumberExpression amount, HSLAValue hsla) {
-    hsla.a = (amount.getValueAsDouble() / 100.0f);
+    hsla.a = (amount.getValue() / 100.0f);
     hsla.a = clamp(hsla.a);
   }
 
@@ -809,7 +809,7 @@ class Spin extends AbstractColorAmountFunction {
   }
 
   protected void apply(NumberExpression amount, HSLAValue hsla) {
-    double hue = ((hsla.h + amount.getValueAsDouble()) % 360);
+    double hue = ((hsla.h + amount.getValue()) % 360);
     hsla.h = hue < 0 ? 360 + hue : hue;
   }
 
@@ -1281,7 +1281,7 @@ abstract class AbstractColorFunction extends CatchAllMultiParameterFunction {
    * @return
    */
   protected static Expression mix(ColorExpression color1, ColorExpression color2, NumberExpression weight, HiddenTokenAwareTree token) {
-    double p = weight.getValueAsDouble() / 100.0;
+    double p = weight.getValue() / 100.0;
     double w = p * 2 - 1;
     double a = color1.getAlpha() - color2.getAlpha();
 
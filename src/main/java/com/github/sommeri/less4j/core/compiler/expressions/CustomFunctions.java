@@ -35,15 +35,19 @@ public class CustomFunctions implements FunctionsPackage {
   public Expression evaluate(FunctionExpression input, List<Expression> parameters, Expression evaluatedParameter) {
     for (LessFunction function : functions) {
       if (function.canEvaluate(input, parameters)) {
-        FunctionExpression inputClone = input.clone();
-        List<Expression> parametersClone = ArraysUtils.deeplyClonedList(parameters);
-        Expression evaluatedParameterClone = evaluatedParameter.clone();
-        return fixResult(function.evaluate(inputClone, parametersClone, evaluatedParameterClone, new SafeLessProblem(problemsHandler, inputClone)), input);
+        return evaluate(function, input, parameters, evaluatedParameter);
       }
     }
     return new FaultyExpression(input);
   }
 
+  public Expression evaluate(LessFunction function, FunctionExpression input, List<Expression> parameters, Expression evaluatedParameter) {
+    FunctionExpression inputClone = input.clone();
+    List<Expression> parametersClone = ArraysUtils.deeplyClonedList(parameters);
+    Expression evaluatedParameterClone = evaluatedParameter.clone();
+    return fixResult(function.evaluate(inputClone, parametersClone, evaluatedParameterClone, new SafeLessProblem(problemsHandler, inputClone)), input);
+  }
+
   private Expression fixResult(Expression result, FunctionExpression input) {
     if (result == null)
       return new FaultyExpression(input);
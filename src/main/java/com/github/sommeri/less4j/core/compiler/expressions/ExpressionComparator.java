@@ -89,7 +89,7 @@ public abstract class ExpressionComparator {
       NumberExpression patternClone = (NumberExpression) pattern.getExpression().clone();
 
       if (pattern.getSign() == Sign.MINUS)
-        patternClone.setValueAsDouble(patternClone.getValueAsDouble() * -1);
+        patternClone.setValue(patternClone.getValue() * -1);
 
       NumberExpression number = (NumberExpression) expression;
       return equalNumber(patternClone, number);
@@ -109,17 +109,14 @@ public abstract class ExpressionComparator {
     return value.equals(value2);
   }
 
-  protected boolean equals(Double value, Double value2) {
-    if (value == null || value2==null)
-      return value2 == null && value==null;
-
+  protected boolean equals(double value, double value2) {
     value = normalize0(value);
     value2 = normalize0(value2);
-    return value.compareTo(value2) == 0;
+    return Double.compare(value, value2) == 0;
   }
 
-  private Double normalize0(Double value) {
-    if (value.compareTo(-0.0) == 0)
+  private double normalize0(double value) {
+    if (Double.compare(value, -0.0) == 0)
       value = 0.0;
     return value;
   }
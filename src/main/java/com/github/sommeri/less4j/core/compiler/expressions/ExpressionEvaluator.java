@@ -7,6 +7,8 @@ import java.util.List;
 import com.github.sommeri.less4j.EmbeddedLessGenerator;
 import com.github.sommeri.less4j.EmbeddedScriptGenerator;
 import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessFunction;
+import com.github.sommeri.less4j.PureLessFunction;
 import com.github.sommeri.less4j.core.ast.ASTCssNode;
 import com.github.sommeri.less4j.core.ast.ASTCssNodeType;
 import com.github.sommeri.less4j.core.ast.AnonymousExpression;
@@ -55,7 +57,10 @@ public class ExpressionEvaluator {
   private ArithmeticCalculator arithmeticCalculator;
   private ColorsCalculator colorsCalculator;
   private ExpressionComparator comparator = new GuardsComparator();
-  private List<FunctionsPackage> functions = new ArrayList<FunctionsPackage>(10);
+  private final FunctionsRegistry functionsRegistry;
+  // created only when needed
+  private CustomFunctions customFunctions;
+  private List<FunctionsPackage> additionalFunctions;
   private StringInterpolator stringInterpolator;
   private StringInterpolator embeddedScriptInterpolator;
   private EmbeddedScriptGenerator embeddedScripting;
@@ -73,18 +78,16 @@ public class ExpressionEvaluator {
     embeddedScripting = configuration.getEmbeddedScriptGenerator() == null ? new EmbeddedLessGenerator() : configuration.getEmbeddedScriptGenerator();
     stringInterpolator = new StringInterpolator(problemsHandler);
     embeddedScriptInterpolator = new StringInterpolator(embeddedScripting, problemsHandler);
-
-    functions.add(new CustomFunctions(problemsHandler, configuration.getCustomFunctions()));
-    functions.add(new MathFunctions(problemsHandler));
-    functions.add(new StringFunctions(problemsHandler));
-    functions.add(new ColorFunctions(problemsHandler));
-    functions.add(new MiscFunctions(problemsHandler));
-    functions.add(new EmbeddedScriptFunctions(problemsHandler));
-    functions.add(new TypeFunctions(problemsHandler));
+    functionsRegistry = FunctionsRegistry.forConfiguration(configuration);
   }
 
+  /**
+   * Added packs are asked after both custom and built-in functions.
+   */
   protected void addFunctionsPack(FunctionsPackage pack) {
-    functions.add(pack);
+    if (additionalFunctions == null)
+      additionalFunctions = new ArrayList<FunctionsPackage>(1);
+    additionalFunctions.add(pack);
   }
 
   public List<Expression> evaluateAll(List<Expression> expressions) {
@@ -258,21 +261,21 @@ public class ExpressionEvaluator {
     if (!leftE.convertibleTo(rightE))
       return false;
 
-    Double left = leftE.convertIfPossible(rightE.getSuffix()).getValueAsDouble();
-    Double right = rightE.getValueAsDouble();
+    double left = leftE.getValueConvertedTo(rightE.getSuffix());
+    double right = rightE.getValue();
 
     switch (operator.getOperator()) {
     case GREATER:
-      return left.compareTo(right) > 0;
+      return Double.compare(left, right) > 0;
 
     case GREATER_OR_EQUAL:
-      return left.compareTo(right) >= 0;
+      return Double.compare(left, right) >= 0;
 
     case LOWER_OR_EQUAL:
-      return left.compareTo(right) <= 0;
+      return Double.compare(left, right) <= 0;
 
     case LOWER:
-      return left.compareTo(right) < 0;
+      return Double.compare(left, right) < 0;
 
     default:
       throw new BugHappened("Unexpected comparison operator", operator);
@@ -284,9 +287,21 @@ public class ExpressionEvaluator {
     List<Expression> splitParameters = (evaluatedParameter.getType() == ASTCssNodeType.EMPTY_EXPRESSION) ? new ArrayList<Expression>() : evaluatedParameter.splitByComma();
 
     if (!input.isCssOnlyFunction()) {
-      for (FunctionsPackage pack : functions) {
-        if (pack.canEvaluate(input, splitParameters))
-          return pack.evaluate(input, splitParameters, evaluatedParameter);
+      if (functionsRegistry.hasCustomFunctions()) {
+        LessFunction custom = functionsRegistry.findCustomFunction(input, splitParameters);
+        if (custom != null)
+          return evaluate(custom, input, splitParameters, evaluatedParameter);
+      }
+
+      Function function = functionsRegistry.findBuiltInFunction(input);
+      if (function != null)
+        return function.evaluate(splitParameters, problemsHandler, input, evaluatedParameter);
+
+      if (additionalFunctions != null) {
+        for (FunctionsPackage pack : additionalFunctions) {
+          if (pack.canEvaluate(input, splitParameters))
+            return pack.evaluate(input, splitParameters, evaluatedParameter);
+        }
       }
     }
 
@@ -294,6 +309,37 @@ public class ExpressionEvaluator {
     return unknownFunction.evaluate(splitParameters, problemsHandler, input, evaluatedParameter);
   }
 
+  private Expression evaluate(LessFunction custom, FunctionExpression input, List<Expression> splitParameters, Expression evaluatedParameter) {
+    FunctionResultsCache resultsCache = functionsRegistry.getResultsCache();
+    Object key = custom instanceof PureLessFunction ? resultsCache.toKey((PureLessFunction) custom, input, evaluatedParameter) : null;
+    Expression result = key == null ? null : resultsCache.get(key, input);
+    if (result != null)
+      return result;
+
+    int problemsCount = countProblems();
+    result = getCustomFunctions().evaluate(custom, input, splitParameters, evaluatedParameter);
+    if (key != null)
+      storeResult(key, input, evaluatedParameter, result, problemsCount);
+    return result;
+  }
+
+  private void storeResult(Object key, FunctionExpression input, Expression evaluatedParameter, Expression result, int problemsCount) {
+    // cached result would not report problems again, unchanged input is cheap to produce
+    if (problemsCount != countProblems() || result.getType() == ASTCssNodeType.FAULTY_EXPRESSION || result == input || result == evaluatedParameter)
+      return;
+    functionsRegistry.getResultsCache().put(key, result);
+  }
+
+  private int countProblems() {
+    return problemsHandler.getErrors().size() + problemsHandler.getWarnings().size();
+  }
+
+  private CustomFunctions getCustomFunctions() {
+    if (customFunctions == null)
+      customFunctions = new CustomFunctions(problemsHandler, functionsRegistry.getCustomFunctions());
+    return customFunctions;
+  }
+
   public Expression evaluate(ListExpression input) {
     List<Expression> evaluated = new ArrayList<Expression>();
     for (Expression expression : input.getExpressions()) {
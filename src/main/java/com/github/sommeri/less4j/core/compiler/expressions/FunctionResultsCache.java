@@ -0,0 +1,136 @@
+package com.github.sommeri.less4j.core.compiler.expressions;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.sommeri.less4j.PureLessFunction;
+import com.github.sommeri.less4j.core.ast.ASTCssNode;
+import com.github.sommeri.less4j.core.ast.Comment;
+import com.github.sommeri.less4j.core.ast.Expression;
+import com.github.sommeri.less4j.core.ast.FunctionExpression;
+import com.github.sommeri.less4j.core.parser.HiddenTokenAwareTree;
+import com.github.sommeri.less4j.core.parser.SourcePositionTree;
+
+/**
+ * Remembers results of {@link PureLessFunction}s. Key is made of function implementation, called
+ * name and evaluated arguments, calls whose arguments are not plain values are not cached, see
+ * {@link ValueKeyBuilder}. Built-in functions are not cached, they cost about as much as the key.
+ *
+ * Cache is bounded, least recently used results are forgotten first. It is shared by all
+ * compilations using the same custom functions, so it is thread safe and keeps only copies of
+ * results. Copies do not reference parse trees of compiled sheets, see {@link SourcePositionTree}.
+ */
+class FunctionResultsCache {
+
+  private static final int MAX_SIZE = 1000;
+
+  private final ValueKeyBuilder keyBuilder = new ValueKeyBuilder();
+  private final Map<Key, Expression> results = new LinkedHashMap<Key, Expression>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Expression> eldest) {
+      return size() > MAX_SIZE;
+    }
+  };
+
+  /**
+   * @return key of the call or <code>null</code> if the call can not be cached
+   */
+  public Object toKey(PureLessFunction function, FunctionExpression input, Expression evaluatedParameter) {
+    String parameterKey = keyBuilder.toKey(evaluatedParameter);
+    return parameterKey == null ? null : new Key(function, input.getName(), parameterKey);
+  }
+
+  /**
+   * @return copy of remembered result or <code>null</code> if there is none
+   */
+  public Expression get(Object key, FunctionExpression input) {
+    Expression result;
+    synchronized (results) {
+      result = results.get(key);
+    }
+    if (result == null)
+      return null;
+
+    Expression copy = result.clone();
+    setUnderlyingStructure(copy, input.getUnderlyingStructure());
+    return copy;
+  }
+
+  public void put(Object key, Expression result) {
+    Expression copy = result.clone();
+    detachParseTrees(copy);
+    synchronized (results) {
+      results.put((Key) key, copy);
+    }
+  }
+
+  private void setUnderlyingStructure(ASTCssNode node, HiddenTokenAwareTree underlyingStructure) {
+    node.setUnderlyingStructure(underlyingStructure);
+    for (ASTCssNode kid : node.getChilds()) {
+      setUnderlyingStructure(kid, underlyingStructure);
+    }
+  }
+
+  /**
+   * Nodes of the copy are owned by it, comments are shared with the original and must be copied.
+   */
+  private void detachParseTrees(ASTCssNode node) {
+    node.setUnderlyingStructure(toPosition(node.getUnderlyingStructure()));
+    node.setOpeningComments(detachParseTrees(node.getOpeningComments()));
+    node.setOrphanComments(detachParseTrees(node.getOrphanComments()));
+    node.setTrailingComments(detachParseTrees(node.getTrailingComments()));
+    for (ASTCssNode kid : node.getChilds()) {
+      detachParseTrees(kid);
+    }
+  }
+
+  private List<Comment> detachParseTrees(List<Comment> comments) {
+    if (comments.isEmpty())
+      return new ArrayList<Comment>();
+
+    List<Comment> result = new ArrayList<Comment>(comments.size());
+    for (Comment comment : comments) {
+      Comment copy = comment.clone();
+      copy.setUnderlyingStructure(toPosition(comment.getUnderlyingStructure()));
+      result.add(copy);
+    }
+    return result;
+  }
+
+  private HiddenTokenAwareTree toPosition(HiddenTokenAwareTree tree) {
+    return tree == null || tree instanceof SourcePositionTree ? tree : new SourcePositionTree(tree);
+  }
+
+  private static class Key {
+
+    private final Object function;
+    private final String name;
+    private final String parameters;
+
+    public Key(Object function, String name, String parameters) {
+      this.function = function;
+      this.name = name;
+      this.parameters = parameters;
+    }
+
+    @Override
+    public int hashCode() {
+      return (System.identityHashCode(function) * 31 + name.hashCode()) * 31 + parameters.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key))
+        return false;
+
+      Key other = (Key) obj;
+      return function == other.function && name.equals(other.name) && parameters.equals(other.parameters);
+    }
+
+  }
+
+}
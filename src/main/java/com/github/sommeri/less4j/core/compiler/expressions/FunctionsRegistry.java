@@ -0,0 +1,138 @@
+package com.github.sommeri.less4j.core.compiler.expressions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessFunction;
+import com.github.sommeri.less4j.NamedLessFunction;
+import com.github.sommeri.less4j.core.ast.Expression;
+import com.github.sommeri.less4j.core.ast.FunctionExpression;
+
+/**
+ * Resolves function calls to their implementations. Custom functions are asked first, built-in
+ * functions are then found by name in one table shared by all registries. Custom functions
+ * implementing {@link NamedLessFunction} are indexed by names, so only them and catch-all custom
+ * functions are asked about a call.
+ *
+ * Registry is immutable and shared by all expression evaluators created for configurations with
+ * the same custom functions, e.g., copies of one configuration. Few recently used registries
+ * are kept. Results of pure custom functions are remembered in the registry, so they survive
+ * between compilations.
+ */
+public final class FunctionsRegistry {
+
+  // earlier packs win if the same name is used twice
+  private static final Map<String, Function> BUILT_IN_FUNCTIONS = collectBuiltIns(new MathFunctions(null), new StringFunctions(null), new ColorFunctions(null), new MiscFunctions(null), new EmbeddedScriptFunctions(null), new TypeFunctions(null));
+  private static final int MAX_REGISTRIES = 16;
+  private static final Map<List<LessFunction>, FunctionsRegistry> registries = new LinkedHashMap<List<LessFunction>, FunctionsRegistry>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<List<LessFunction>, FunctionsRegistry> eldest) {
+      return size() > MAX_REGISTRIES;
+    }
+  };
+
+  private final List<LessFunction> customFunctions;
+  // both keep the order in which custom functions were registered
+  private final Map<String, List<LessFunction>> customFunctionsByName = new HashMap<String, List<LessFunction>>();
+  private final List<LessFunction> catchAllFunctions = new ArrayList<LessFunction>();
+  private final FunctionResultsCache resultsCache = new FunctionResultsCache();
+
+  private FunctionsRegistry(List<LessFunction> customFunctions) {
+    this.customFunctions = customFunctions == null ? Collections.<LessFunction> emptyList() : Collections.unmodifiableList(new ArrayList<LessFunction>(customFunctions));
+    for (LessFunction function : this.customFunctions) {
+      Collection<String> names = function instanceof NamedLessFunction ? ((NamedLessFunction) function).getNames() : null;
+      if (names != null) {
+        for (String name : names) {
+          addNamed(name.toLowerCase(), function);
+        }
+      } else {
+        // catch-all functions are candidates for all names
+        catchAllFunctions.add(function);
+        for (List<LessFunction> candidates : customFunctionsByName.values()) {
+          candidates.add(function);
+        }
+      }
+    }
+  }
+
+  private void addNamed(String name, LessFunction function) {
+    List<LessFunction> candidates = customFunctionsByName.get(name);
+    if (candidates == null) {
+      candidates = new ArrayList<LessFunction>(catchAllFunctions);
+      customFunctionsByName.put(name, candidates);
+    }
+    if (!candidates.contains(function))
+      candidates.add(function);
+  }
+
+  public static FunctionsRegistry forConfiguration(Configuration configuration) {
+    List<LessFunction> customFunctions = configuration.getCustomFunctions();
+    if (customFunctions == null)
+      customFunctions = Collections.emptyList();
+
+    synchronized (registries) {
+      FunctionsRegistry result = registries.get(customFunctions);
+      if (result == null) {
+        result = new FunctionsRegistry(customFunctions);
+        // registry keeps its own copy, the list in configuration may change later
+        registries.put(result.customFunctions, result);
+      }
+      return result;
+    }
+  }
+
+  public List<LessFunction> getCustomFunctions() {
+    return customFunctions;
+  }
+
+  public boolean hasCustomFunctions() {
+    return !customFunctions.isEmpty();
+  }
+
+  /**
+   * @return the first custom function able to evaluate the call or <code>null</code>
+   */
+  public LessFunction findCustomFunction(FunctionExpression input, List<Expression> parameters) {
+    List<LessFunction> candidates = customFunctionsByName.get(input.getName().toLowerCase());
+    if (candidates == null)
+      candidates = catchAllFunctions;
+
+    for (LessFunction function : candidates) {
+      if (function.canEvaluate(input, parameters))
+        return function;
+    }
+    return null;
+  }
+
+  /**
+   * @return built-in function of the same name or <code>null</code>
+   */
+  Function findBuiltInFunction(FunctionExpression input) {
+    return BUILT_IN_FUNCTIONS.get(input.getName().toLowerCase());
+  }
+
+  FunctionResultsCache getResultsCache() {
+    return resultsCache;
+  }
+
+  private static Map<String, Function> collectBuiltIns(BuiltInFunctionsPack... packs) {
+    Map<String, Function> result = new HashMap<String, Function>();
+    for (BuiltInFunctionsPack pack : packs) {
+      for (Entry<String, Function> entry : pack.getFunctions().entrySet()) {
+        if (!result.containsKey(entry.getKey()))
+          result.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return result;
+  }
+
+}
@@ -12,8 +12,7 @@ public class GuardsComparator extends ExpressionComparator {
     if (!pattern.convertibleTo(numberExpression))
       return false;
 
-    NumberExpression value = pattern.convertIfPossible(numberExpression.getSuffix());
-    return equals(value.getValueAsDouble(), numberExpression.getValueAsDouble());
+    return equals(pattern.getValueConvertedTo(numberExpression.getSuffix()), numberExpression.getValue());
   }
 
   @Override
@@ -26,6 +26,7 @@ import com.github.sommeri.less4j.core.ast.ListExpression;
 import com.github.sommeri.less4j.core.ast.ListExpressionOperator;
 import com.github.sommeri.less4j.core.ast.NumberExpression;
 import com.github.sommeri.less4j.core.ast.NumberExpression.Dimension;
+import com.github.sommeri.less4j.core.compiler.stages.ResourcesPrefetcher;
 import com.github.sommeri.less4j.core.parser.ConversionUtils;
 import com.github.sommeri.less4j.core.parser.HiddenTokenAwareTree;
 import com.github.sommeri.less4j.core.problems.ProblemsHandler;
@@ -129,7 +130,7 @@ class Unit extends CatchAllMultiParameterFunction {
       newDimension = Dimension.NUMBER;
     }
 
-    return new NumberExpression(token, dimension.getValueAsDouble(), newSuffix, null, newDimension);
+    return new NumberExpression(token, dimension.getValue(), newSuffix, null, newDimension);
   }
 
   @Override
@@ -240,7 +241,7 @@ class Extract extends CatchAllMultiParameterFunction {
   protected Expression evaluate(List<Expression> splitParameters, ProblemsHandler problemsHandler, FunctionExpression functionCall, HiddenTokenAwareTree token) {
     List<Expression> values = collect((ListExpression) splitParameters.get(0));
     NumberExpression index = (NumberExpression) splitParameters.get(1);
-    return values.get(index.getValueAsDouble().intValue() - 1);
+    return values.get((int) index.getValue() - 1);
   }
 
   private List<Expression> collect(ListExpression values) {
@@ -305,7 +306,7 @@ class DataUri extends CatchAllMultiParameterFunction {
     LessSource source = token.getSource();
     try {
       LessSource dataSource = source.relativeSource(filename);
-      byte[] data = dataSource.getBytes();
+      byte[] data = ResourcesPrefetcher.getBytes(dataSource);
 
       String encodedData = encodeDataUri(mimetype, data);
       // **** less.js comment - flag is not implemented yet ****
@@ -401,7 +402,7 @@ class ImageSize extends CatchAllMultiParameterFunction {
     LessSource source = token.getSource();
     try {
       LessSource dataSource = source.relativeSource(filename);
-      byte[] data = dataSource.getBytes();
+      byte[] data = ResourcesPrefetcher.getBytes(dataSource);
 
       BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
       if (image==null) {
@@ -6,7 +6,7 @@ public class PatternsComparator extends ExpressionComparator {
 
   @Override
   protected boolean numberEqual(NumberExpression pattern, NumberExpression numberExpression) {
-    return equals(pattern.getSuffix(), numberExpression.getSuffix()) && equals(pattern.getValueAsDouble(), numberExpression.getValueAsDouble());
+    return equals(pattern.getSuffix(), numberExpression.getSuffix()) && equals(pattern.getValue(), numberExpression.getValue());
   }
 
 
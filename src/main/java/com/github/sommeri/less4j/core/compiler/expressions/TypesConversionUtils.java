@@ -73,6 +73,39 @@ public class TypesConversionUtils {
     return toJavaFileSeparator(contentToString(parameters.get(0)));
   }
 
+  /**
+   * Extracts filename from url that does not have to be evaluated - it contains no variables,
+   * interpolation or embedded scripts. Returns the same value as 
+   * {@link #extractFilename(Expression, ProblemsHandler, Configuration)} would or <code>null</code> 
+   * if the url has to be evaluated.  
+   */
+  public String extractStaticFilename(Expression urlInput) {
+    Expression urlExpression = urlInput;
+    if (urlInput.getType() == ASTCssNodeType.FUNCTION) {
+      FunctionExpression function = (FunctionExpression) urlInput;
+      if (!"url".equals(function.getName().toLowerCase()))
+        return null;
+      urlExpression = function.getParameter();
+    }
+
+    String content = isStatic(urlExpression) ? contentToString(urlExpression) : null;
+    return content == null ? null : toJavaFileSeparator(content);
+  }
+
+  private boolean isStatic(Expression expression) {
+    switch (expression.getType()) {
+    case IDENTIFIER_EXPRESSION:
+      return true;
+
+    case STRING_EXPRESSION:
+    case ESCAPED_VALUE:
+      return !contentToString(expression).contains("@{");
+
+    default:
+      return false;
+    }
+  }
+
   private String toJavaFileSeparator(String path) {
     if (Constants.FILE_SEPARATOR.equals("/")) {
       return path;
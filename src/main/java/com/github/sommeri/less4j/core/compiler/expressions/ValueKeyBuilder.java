@@ -0,0 +1,103 @@
+package com.github.sommeri.less4j.core.compiler.expressions;
+
+import com.github.sommeri.less4j.core.ast.ASTCssNode;
+import com.github.sommeri.less4j.core.ast.BinaryExpressionOperator;
+import com.github.sommeri.less4j.core.ast.ColorExpression;
+import com.github.sommeri.less4j.core.ast.CssString;
+import com.github.sommeri.less4j.core.ast.EscapedValue;
+import com.github.sommeri.less4j.core.ast.FunctionExpression;
+import com.github.sommeri.less4j.core.ast.IdentifierExpression;
+import com.github.sommeri.less4j.core.ast.ListExpressionOperator;
+import com.github.sommeri.less4j.core.ast.NumberExpression;
+import com.github.sommeri.less4j.core.ast.SignedExpression;
+
+/**
+ * Builds keys of values used by caches. Values with the same key behave the same way wherever
+ * they are used.
+ *
+ * Only values that do not reference anything are accepted, e.g. numbers, colors, identifiers,
+ * strings and lists or operations made of them. Printed form of a value is not enough, number
+ * may print rounded or color may print the same way as identifier.
+ */
+public class ValueKeyBuilder {
+
+  /**
+   * @return key of the value or <code>null</code> if the value is not accepted
+   */
+  public String toKey(ASTCssNode value) {
+    StringBuilder key = new StringBuilder();
+    return append(key, value) ? key.toString() : null;
+  }
+
+  /**
+   * @return <code>false</code> if the value is not accepted, key is unusable then
+   */
+  public boolean append(StringBuilder key, ASTCssNode value) {
+    key.append(value.getType()).append('[');
+    switch (value.getType()) {
+    case NUMBER: {
+      NumberExpression number = (NumberExpression) value;
+      key.append(number.getValue()).append(' ').append(number.getSuffix()).append(' ').append(number.getDimension());
+      key.append(' ').append(number.hasExpliciteSign()).append(' ').append(number.getOriginalString());
+      break;
+    }
+    case COLOR_EXPRESSION: {
+      ColorExpression color = (ColorExpression) value;
+      key.append(color.getClass().getName()).append(' ').append(color.getRed()).append(' ').append(color.getGreen());
+      key.append(' ').append(color.getBlue()).append(' ').append(color.getAlpha());
+      // do not format computed colors only to build key
+      if (color.isFormatted())
+        key.append(" as ").append(color.getValue());
+      break;
+    }
+    case IDENTIFIER_EXPRESSION:
+      key.append(((IdentifierExpression) value).getValue());
+      break;
+    case STRING_EXPRESSION: {
+      CssString string = (CssString) value;
+      if (isInterpolated(string.getValue()))
+        return false;
+      key.append(string.getQuoteType()).append(string.getValue());
+      break;
+    }
+    case ESCAPED_VALUE: {
+      EscapedValue escaped = (EscapedValue) value;
+      if (isInterpolated(escaped.getValue()))
+        return false;
+      key.append(escaped.getValue());
+      break;
+    }
+    case FUNCTION:
+      key.append(((FunctionExpression) value).getName());
+      break;
+    case SIGNED_EXPRESSION:
+      key.append(((SignedExpression) value).getSign());
+      break;
+    case LIST_EXPRESSION_OPERATOR:
+      key.append(((ListExpressionOperator) value).getOperator());
+      break;
+    case BINARY_EXPRESSION_OPERATOR:
+      key.append(((BinaryExpressionOperator) value).getOperator());
+      break;
+    case LIST_EXPRESSION:
+    case BINARY_EXPRESSION:
+    case PARENTHESES_EXPRESSION:
+    case EMPTY_EXPRESSION:
+      break;
+    default:
+      return false;
+    }
+
+    for (ASTCssNode kid : value.getChilds()) {
+      if (!append(key, kid))
+        return false;
+    }
+    key.append(']');
+    return true;
+  }
+
+  private boolean isInterpolated(String value) {
+    return value != null && value.contains("@{");
+  }
+
+}
@@ -124,9 +124,13 @@ public class KeyListStorage<M, T> implements Cloneable {
     }
   }
 
+  /**
+   * Cloned level shares the map with the original until one of them is modified.
+   */
   private static class Level<M, T> implements PubliclyCloneable {
 
     private Map<M, List<T>> storage = new HashMap<M, List<T>>();
+    private boolean sharedStorage = false;
 
     public void add(M key, T thing) {
       getStoredList(key).add(thing);
@@ -146,11 +150,19 @@ public class KeyListStorage<M, T> implements Cloneable {
       List<T> list = storage.get(key);
       if (list == null) {
         list = new ArrayList<T>();
-        storage.put(key, list);
+        ownStorage().put(key, list);
       }
       return list;
     }
 
+    private Map<M, List<T>> ownStorage() {
+      if (sharedStorage) {
+        storage = new HashMap<M, List<T>>(storage);
+        sharedStorage = false;
+      }
+      return storage;
+    }
+
     public boolean contains(M key) {
       return storage.containsKey(key);
     }
@@ -173,7 +185,8 @@ public class KeyListStorage<M, T> implements Cloneable {
         @SuppressWarnings("unchecked")
         Level<M, T> clone = (Level<M, T>) super.clone();
         //should I creat also new lists? old versoin have not done that
-        clone.storage = new HashMap<M, List<T>>(storage);
+        sharedStorage = true;
+        clone.sharedStorage = true;
         return clone;
       } catch (CloneNotSupportedException e) {
         throw new IllegalStateException("Impossible state.");
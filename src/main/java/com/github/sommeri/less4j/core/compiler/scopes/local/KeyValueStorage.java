@@ -1,10 +1,12 @@
 package com.github.sommeri.less4j.core.compiler.scopes.local;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -12,10 +14,31 @@ import java.util.Set;
 import com.github.sommeri.less4j.utils.ArraysUtils;
 import com.github.sommeri.less4j.utils.PubliclyCloneable;
 
+/**
+ * Levels are searched from the last one, the value stored in the last level that contains the
+ * key wins. Positions of winning levels are kept in an index, so lookups do not walk all levels.
+ *
+ * Levels may be shared with other storages (see {@link #add(KeyValueStorage)} and
+ * {@link #replacePlaceholder(ValuePlaceholder, KeyValueStorage)}), so each level knows storages
+ * it belongs to and tells them about its changes.
+ *
+ * Clones are cheap, they share maps of levels with the original until one of them is modified.
+ * They share also the index, small number of later changes is kept aside. Scopes clone their
+ * data whenever they are used inside a snapshot.
+ */
 public class KeyValueStorage<M, T> implements Cloneable {
 
-  private LinkedList<Level<M, T>> levels = new LinkedList<Level<M, T>>();
+  private static final int MAX_INDEX_CHANGES = 16;
+
+  private List<Level<M, T>> levels = new ArrayList<Level<M, T>>();
   private LinkedList<ValuePlaceholder<M, T>> placeholders = new LinkedList<ValuePlaceholder<M, T>>();
+  // null if it has to be rebuilt, shared index is never modified
+  private Map<M, Integer> index;
+  private boolean sharedIndex = false;
+  // changes made after the index was shared with a clone, null if there are none
+  private Map<M, Integer> indexChanges;
+  // null if it has to be rebuilt, valid whenever index is valid
+  private IdentityHashMap<Level<M, T>, Integer> positions;
 
   public int size() {
     return levels.size();
@@ -27,44 +50,43 @@ public class KeyValueStorage<M, T> implements Cloneable {
   }
 
   public void add(KeyValueStorage<M, T> otherStorage) {
+    for (Level<M, T> level : otherStorage.levels) {
+      level.addOwner(this);
+    }
     levels.addAll(otherStorage.levels);
     placeholders.addAll(otherStorage.placeholders);
+    invalidateIndex();
   }
 
   public boolean contains(M key) {
-    for (Level<M, T> level : levels) {
-      if (level.contains(key))
-        return true;
-    }
-    return false;
+    return getPosition(key) != null;
   }
 
   public T getValue(M key) {
-    Iterator<Level<M, T>> di = levels.descendingIterator();
-    while (di.hasNext()) {
-      Level<M, T> level = di.next();
-      if (level.contains(key))
-        return level.getValue(key);
-    }
-
-    return null;
+    Integer position = getPosition(key);
+    return position == null ? null : levels.get(position).getValue(key);
   }
 
   public void remove(M key) {
-    Iterator<Level<M, T>> di = levels.descendingIterator();
-    while (di.hasNext()) {
-      Level<M, T> level = di.next();
+    for (int i = levels.size() - 1; i >= 0; i--) {
+      Level<M, T> level = levels.get(i);
       if (level.contains(key))
         level.remove(key);
     }
   }
 
+  public boolean isEmpty() {
+    for (Level<M, T> level : levels) {
+      if (!level.getKeys().isEmpty())
+        return false;
+    }
+    return true;
+  }
+
   public Set<Entry<M, T>> getAllEntries() {
     Set<Entry<M, T>> result = new HashSet<Entry<M,T>>();
-    Iterator<Level<M, T>> iterator = levels.descendingIterator();
-    while (iterator.hasNext()) {
-      Level<M, T> level = iterator.next();
-      result.addAll(level.getAllEntries());
+    for (int i = levels.size() - 1; i >= 0; i--) {
+      result.addAll(levels.get(i).getAllEntries());
     }
 
     return result;
@@ -103,8 +125,83 @@ public class KeyValueStorage<M, T> implements Cloneable {
   //REPLACE whatever was stored in placeholder
   public void replacePlaceholder(ValuePlaceholder<M, T> placeholder, KeyValueStorage<M, T> otherStorage) {
     //replace in data
+    placeholder.level.removeOwner(this);
+    for (Level<M, T> level : otherStorage.levels) {
+      level.addOwner(this);
+    }
     ArraysUtils.replace(levels, placeholder.level, otherStorage.levels);
     ArraysUtils.replace(placeholders, placeholder, otherStorage.placeholders);
+    invalidateIndex();
+  }
+
+  private Integer getPosition(M key) {
+    Map<M, Integer> index = getIndex();
+    if (indexChanges != null) {
+      Integer position = indexChanges.get(key);
+      if (position != null)
+        return position;
+    }
+    return index.get(key);
+  }
+
+  private Map<M, Integer> getIndex() {
+    if (index == null) {
+      index = new HashMap<M, Integer>();
+      sharedIndex = false;
+      indexChanges = null;
+      for (int i = 0; i < levels.size(); i++) {
+        for (M key : levels.get(i).getKeys()) {
+          index.put(key, i);
+        }
+      }
+    }
+    return index;
+  }
+
+  private IdentityHashMap<Level<M, T>, Integer> getPositions() {
+    if (positions == null) {
+      positions = new IdentityHashMap<Level<M, T>, Integer>();
+      for (Level<M, T> level : levels) {
+        positions.put(level, positions.size());
+      }
+    }
+    return positions;
+  }
+
+  private void invalidateIndex() {
+    index = null;
+    indexChanges = null;
+    positions = null;
+  }
+
+  // the level does not have to be the last one, values may be added into placeholders
+  private void levelAdded(Level<M, T> level, M key) {
+    if (index == null)
+      return;
+
+    Integer winner = getPosition(key);
+    Integer position = getPositions().get(level);
+    if (winner == null || winner < position) {
+      if (!sharedIndex) {
+        index.put(key, position);
+        return;
+      }
+      if (indexChanges == null)
+        indexChanges = new HashMap<M, Integer>();
+      indexChanges.put(key, position);
+      // copy the index once changes are not small anymore
+      if (indexChanges.size() > MAX_INDEX_CHANGES && indexChanges.size() * 4 > index.size()) {
+        index = new HashMap<M, Integer>(index);
+        index.putAll(indexChanges);
+        indexChanges = null;
+        sharedIndex = false;
+      }
+    }
+  }
+
+  private void levelRemoved(Level<M, T> level, M key) {
+    if (index != null && getPositions().get(level).equals(getPosition(key)))
+      invalidateIndex();
   }
 
   private Level<M, T> getLastLevel() {
@@ -112,13 +209,16 @@ public class KeyValueStorage<M, T> implements Cloneable {
       addLevel();
     }
 
-    Level<M, T> lastLevel = levels.peekLast();
-    return lastLevel;
+    return levels.get(levels.size() - 1);
   }
 
   private Level<M, T> addLevel() {
-    levels.add(new Level<M, T>());
-    return levels.peekLast();
+    Level<M, T> level = new Level<M, T>();
+    level.addOwner(this);
+    if (positions != null)
+      positions.put(level, levels.size());
+    levels.add(level);
+    return level;
   }
 
   @Override
@@ -126,11 +226,21 @@ public class KeyValueStorage<M, T> implements Cloneable {
     try {
       @SuppressWarnings("unchecked")
       KeyValueStorage<M, T> clone = (KeyValueStorage<M, T>) super.clone();
-      clone.levels = ArraysUtils.deeplyClonedLinkedList(levels);
+      clone.levels = ArraysUtils.deeplyClonedList(levels);
+      for (Level<M, T> level : clone.levels) {
+        level.addOwner(clone);
+      }
+      // index contains positions, so it is valid also for the clone
+      if (index != null) {
+        sharedIndex = true;
+        clone.sharedIndex = true;
+        if (indexChanges != null)
+          clone.indexChanges = new HashMap<M, Integer>(indexChanges);
+      }
+      clone.positions = null;
       clone.placeholders = new LinkedList<ValuePlaceholder<M, T>>();
       for (ValuePlaceholder<M, T> placeholder : placeholders) {
-        int index = levels.indexOf(placeholder.level);
-        Level<M, T> levelClone = clone.levels.get(index);
+        Level<M, T> levelClone = clone.levels.get(getPositions().get(placeholder.level));
         clone.placeholders.add(new ValuePlaceholder<M, T>(levelClone));
       }
       return clone;
@@ -143,13 +253,26 @@ public class KeyValueStorage<M, T> implements Cloneable {
   public String toString() {
     return levels.toString();
   }
-  
+
+  /**
+   * Cloned level shares the map with the original until one of them is modified.
+   */
   private static class Level<M, T> implements PubliclyCloneable {
 
     private Map<M, T> storage = new HashMap<M, T>();
+    private boolean sharedStorage = false;
+    // most levels belong to one storage
+    private List<KeyValueStorage<M, T>> owners = new ArrayList<KeyValueStorage<M, T>>(1);
 
     public void add(M key, T thing) {
-      storage.put(key, thing);
+      ownStorage().put(key, thing);
+      for (KeyValueStorage<M, T> owner : owners) {
+        owner.levelAdded(this, key);
+      }
+    }
+
+    public Collection<M> getKeys() {
+      return storage.keySet();
     }
 
     public Collection<Entry<M, T>> getAllEntries() {
@@ -161,7 +284,10 @@ public class KeyValueStorage<M, T> implements Cloneable {
     }
 
     public void remove(M key) {
-      storage.remove(key);
+      ownStorage().remove(key);
+      for (KeyValueStorage<M, T> owner : owners) {
+        owner.levelRemoved(this, key);
+      }
     }
 
     public boolean contains(M key) {
@@ -174,19 +300,38 @@ public class KeyValueStorage<M, T> implements Cloneable {
       }
     }
 
+    public void addOwner(KeyValueStorage<M, T> owner) {
+      if (!owners.contains(owner))
+        owners.add(owner);
+    }
+
+    public void removeOwner(KeyValueStorage<M, T> owner) {
+      owners.remove(owner);
+    }
+
+    private Map<M, T> ownStorage() {
+      if (sharedStorage) {
+        storage = new HashMap<M, T>(storage);
+        sharedStorage = false;
+      }
+      return storage;
+    }
+
     @Override
     public Level<M, T> clone() {
       try {
         @SuppressWarnings("unchecked")
         Level<M, T> clone = (Level<M, T>) super.clone();
-        clone.storage = new HashMap<M, T>(storage);
+        sharedStorage = true;
+        clone.sharedStorage = true;
+        clone.owners = new ArrayList<KeyValueStorage<M, T>>(1);
         return clone;
       } catch (CloneNotSupportedException e) {
         throw new IllegalStateException("Impossible state.");
       }
     }
 
-    
+
     @Override
     public String toString() {
       return "Level: " + storage.toString();
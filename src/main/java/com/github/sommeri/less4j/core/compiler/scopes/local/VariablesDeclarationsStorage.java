@@ -65,6 +65,10 @@ public class VariablesDeclarationsStorage implements Cloneable {
     return coolStorage.size();
   }
 
+  public boolean isEmpty() {
+    return coolStorage.isEmpty();
+  }
+
   public VariablesPlaceholder createPlaceholder() {
     return new VariablesPlaceholder(coolStorage.createPlaceholder());
   }
@@ -0,0 +1,134 @@
+package com.github.sommeri.less4j.core.compiler.stages;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Result loaded in background in one or more steps. Each step is submitted to the executor,
+ * but the thread waiting for the result runs steps the executor did not start yet. Executor
+ * busy with other work, one that rejects tasks or one that silently drops them only slows the
+ * waiting thread down. No thread ever blocks waiting for another step, so bounded executors
+ * can not deadlock.
+ *
+ * Subclasses schedule steps either directly or by passing {@link #getStepsExecutor()} to
+ * asynchronous methods of {@link com.github.sommeri.less4j.LessSource}, and call
+ * {@link #finish(Object)} when the result is known.
+ */
+abstract class BackgroundLoad<T> {
+
+  private final Executor executor;
+  private final Executor stepsExecutor = new Executor() {
+
+    @Override
+    public void execute(Runnable step) {
+      schedule(step);
+    }
+  };
+
+  // guarded by this
+  private final LinkedList<Runnable> waitingSteps = new LinkedList<Runnable>();
+  private boolean finished = false;
+  private boolean cancelled = false;
+  private T result;
+  private Throwable failure;
+
+  public BackgroundLoad(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * @return executor that runs steps of this load
+   */
+  protected Executor getStepsExecutor() {
+    return stepsExecutor;
+  }
+
+  protected void schedule(final Runnable step) {
+    synchronized (this) {
+      if (finished || cancelled)
+        return;
+      waitingSteps.add(step);
+      // waiting thread runs the step if the executor does not
+      notifyAll();
+    }
+
+    try {
+      executor.execute(new Runnable() {
+
+        @Override
+        public void run() {
+          if (claim(step))
+            runStep(step);
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      // the step is run by the thread waiting for the result
+    }
+  }
+
+  protected synchronized void finish(T result) {
+    if (finished)
+      return;
+    this.result = result;
+    finished = true;
+    notifyAll();
+  }
+
+  private synchronized void fail(Throwable failure) {
+    if (finished)
+      return;
+    this.failure = failure;
+    finished = true;
+    notifyAll();
+  }
+
+  /**
+   * Steps that did not start yet are dropped, running steps finish, but schedule nothing new.
+   */
+  public synchronized void cancel() {
+    cancelled = true;
+    waitingSteps.clear();
+  }
+
+  /**
+   * Waits for the result, steps that did not start yet are run in the calling thread.
+   * Runtime exceptions and errors thrown by steps are thrown from here.
+   */
+  public T get() throws InterruptedException {
+    while (true) {
+      Runnable step;
+      synchronized (this) {
+        if (finished)
+          break;
+        step = waitingSteps.poll();
+        if (step == null)
+          wait();
+      }
+      if (step != null)
+        runStep(step);
+    }
+
+    if (failure instanceof RuntimeException)
+      throw (RuntimeException) failure;
+    if (failure instanceof Error)
+      throw (Error) failure;
+    return result;
+  }
+
+  private synchronized boolean claim(Runnable step) {
+    return waitingSteps.remove(step);
+  }
+
+  private void runStep(Runnable step) {
+    try {
+      step.run();
+    } catch (RuntimeException ex) {
+      fail(ex);
+    } catch (Error ex) {
+      fail(ex);
+      throw ex;
+    }
+  }
+
+}
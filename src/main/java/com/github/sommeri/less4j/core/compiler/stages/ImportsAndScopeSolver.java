@@ -29,13 +29,18 @@ public class ImportsAndScopeSolver {
 
   public IScope buildImportsAndScope(StyleSheet less, LessSource source) {
     importsSolver = new SingleImportSolver(problemsHandler, configuration);
+    importsSolver.sheetLoaded(less, source);
     allImportedSources = new HashSet<LessSource>(); 
 
     InitialScopeExtractor scopeBuilder = new InitialScopeExtractor();
     IScope scope = scopeBuilder.extractScope(less);
     List<PlaceholderScope> importsPlaceholders = scopeBuilder.getImportsPlaceholders();
 
-    solveNestedImports(importsPlaceholders);
+    try {
+      solveNestedImports(importsPlaceholders);
+    } finally {
+      importsSolver.importsSolved();
+    }
 
     return scope;
   }
@@ -0,0 +1,305 @@
+package com.github.sommeri.less4j.core.compiler.stages;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+import com.github.sommeri.less4j.LessCompiler.Cache;
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.LessSource.CannotReadFile;
+import com.github.sommeri.less4j.LessSource.FileNotFound;
+import com.github.sommeri.less4j.LessSource.ReadCallback;
+import com.github.sommeri.less4j.LessSource.StringSourceException;
+import com.github.sommeri.less4j.core.ast.ASTCssNode;
+import com.github.sommeri.less4j.core.ast.ASTCssNodeType;
+import com.github.sommeri.less4j.core.ast.Import;
+import com.github.sommeri.less4j.core.ast.StyleSheet;
+import com.github.sommeri.less4j.core.compiler.expressions.TypesConversionUtils;
+import com.github.sommeri.less4j.core.parser.ANTLRParser;
+import com.github.sommeri.less4j.core.parser.ASTBuilder;
+import com.github.sommeri.less4j.core.problems.ProblemsHandler;
+
+/**
+ * Reads and parses imported sheets on an executor before {@link SingleImportSolver} needs
+ * them. Imports are still solved one by one in the original order, the solver only takes
+ * prefetched results instead of reading and parsing files itself. Import once and import
+ * multiple work the same way as without prefetching.
+ *
+ * Only imports with url that does not have to be evaluated are prefetched, imports of
+ * prefetched sheets are prefetched too. Each imported source is prefetched at most once per
+ * compilation, no matter how many sheets import it. Problems found while parsing are kept
+ * aside and reported when the import is solved, so they are reported in the same order as
+ * without prefetching.
+ */
+public class ImportsPrefetcher {
+
+  private final Executor executor;
+  private final Cache astCache;
+  private final boolean detachParseTrees;
+  private final TypesConversionUtils conversionUtils = new TypesConversionUtils();
+  private final ANTLRParser parser = new ANTLRParser();
+
+  private final ConcurrentMap<ImportKey, PendingImport> prefetched = new ConcurrentHashMap<ImportKey, PendingImport>();
+  private final ConcurrentMap<ImportKey, Boolean> startedImports = new ConcurrentHashMap<ImportKey, Boolean>();
+  private final ConcurrentMap<LessSource, Boolean> scannedSources = new ConcurrentHashMap<LessSource, Boolean>();
+  private volatile boolean finished = false;
+
+  public ImportsPrefetcher(Executor executor, Cache astCache, boolean detachParseTrees) {
+    this.executor = executor;
+    this.astCache = astCache;
+    this.detachParseTrees = detachParseTrees;
+  }
+
+  /**
+   * Starts prefetching of sheets imported by the sheet. Each source is scanned for imports only
+   * once, sheets imported multiple times do not start the same work again.
+   * 
+   * @param source source the sheet was loaded from, imports are resolved relative to it
+   */
+  public void prefetchImports(StyleSheet sheet, LessSource source) {
+    if (finished || source == null || scannedSources.putIfAbsent(source, Boolean.TRUE) != null)
+      return;
+
+    for (Import node : findImports(sheet)) {
+      String filename = conversionUtils.extractStaticFilename(node.getUrlExpression());
+      if (filename != null)
+        filename = SingleImportSolver.toImportedFilename(node, filename);
+      if (filename == null)
+        continue;
+
+      try {
+        prefetch(new ImportKey(source.relativeSource(filename), node.isInline()));
+      } catch (FileNotFound ex) {
+        // solver reports the problem when it gets to the import
+      } catch (CannotReadFile ex) {
+      } catch (StringSourceException ex) {
+      }
+    }
+  }
+
+  /**
+   * Waits for prefetched import and forgets it, next import of the same file must be read
+   * again. Steps of the import that did not start yet are run in the calling thread, so
+   * compilation does not wait for executor busy with other work or one that dropped them.
+   *
+   * @return prefetched import or <code>null</code> if the import was not prefetched
+   */
+  public PrefetchedImport take(Import node, LessSource importedSource) {
+    PendingImport pending = prefetched.remove(new ImportKey(importedSource, node.isInline()));
+    if (pending == null)
+      return null;
+
+    try {
+      return pending.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  /**
+   * Import will not be solved, e.g., it imports the same file only once. Its prefetching is
+   * stopped if it did not start yet.
+   */
+  public void skip(Import node, LessSource importedSource) {
+    PendingImport pending = prefetched.remove(new ImportKey(importedSource, node.isInline()));
+    if (pending != null)
+      pending.cancel();
+  }
+
+  /**
+   * All imports were solved, remaining imports are not needed and will not be started.
+   * Running steps are left to finish, but they do not prefetch anything new.
+   */
+  public void finish() {
+    finished = true;
+    for (ImportKey key : prefetched.keySet()) {
+      PendingImport pending = prefetched.remove(key);
+      if (pending != null)
+        pending.cancel();
+    }
+  }
+
+  private void prefetch(ImportKey key) {
+    if (startedImports.putIfAbsent(key, Boolean.TRUE) != null)
+      return;
+
+    PendingImport pending = new PendingImport(key);
+    if (prefetched.putIfAbsent(key, pending) == null)
+      pending.start();
+  }
+
+  /**
+   * Loads import in three steps: checks cache, reads content using
+   * {@link LessSource#getContentAsync(Executor, ReadCallback)} and parses it. Sources with
+   * non-blocking reads do not occupy executor thread while they wait for data.
+   */
+  private class PendingImport extends BackgroundLoad<PrefetchedImport> implements ReadCallback<String> {
+
+    private final ImportKey key;
+    private final PrefetchedImport result = new PrefetchedImport();
+
+    public PendingImport(ImportKey key) {
+      super(executor);
+      this.key = key;
+      result.source = key.source;
+    }
+
+    public void start() {
+      schedule(new Runnable() {
+
+        @Override
+        public void run() {
+          if (!key.inline) {
+            result.cachedAst = (StyleSheet) astCache.getAst(result.source);
+            if (result.cachedAst != null) {
+              prefetchImports(result.cachedAst, result.source);
+              finish(result);
+              return;
+            }
+          }
+          result.source.getContentAsync(getStepsExecutor(), PendingImport.this);
+        }
+      });
+    }
+
+    @Override
+    public void finished(final String content) {
+      result.content = content;
+      if (key.inline) {
+        finish(result);
+        return;
+      }
+
+      schedule(new Runnable() {
+
+        @Override
+        public void run() {
+          result.parseResult = parser.parseStyleSheet(content, result.source);
+          if (!result.parseResult.hasErrors()) {
+            result.problemsHandler = new ProblemsHandler();
+            ASTBuilder astBuilder = new ASTBuilder(result.problemsHandler);
+            astBuilder.setDetachParseTrees(detachParseTrees);
+            result.ast = astBuilder.parseStyleSheet(result.parseResult.getTree());
+            prefetchImports(result.ast, result.source);
+          }
+          finish(result);
+        }
+      });
+    }
+
+    @Override
+    public void failed(Exception problem) {
+      result.problem = problem;
+      finish(result);
+    }
+
+  }
+
+  private List<Import> findImports(ASTCssNode sheet) {
+    List<Import> result = new ArrayList<Import>();
+    List<ASTCssNode> stack = new ArrayList<ASTCssNode>();
+    stack.add(sheet);
+    while (!stack.isEmpty()) {
+      ASTCssNode node = stack.remove(stack.size() - 1);
+      if (node.getType() == ASTCssNodeType.IMPORT) {
+        result.add((Import) node);
+      } else {
+        for (ASTCssNode kid : node.getChilds()) {
+          if (kid != null)
+            stack.add(kid);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Result of reading and parsing of an imported sheet. Methods throw exceptions that would
+   * be thrown if the sheet was not prefetched.
+   */
+  public static class PrefetchedImport {
+
+    private LessSource source;
+    private Exception problem;
+    private StyleSheet cachedAst;
+    private String content;
+    private ANTLRParser.ParseResult parseResult;
+    private ProblemsHandler problemsHandler;
+    private StyleSheet ast;
+
+    /**
+     * @return tree found in cache or <code>null</code>
+     */
+    public StyleSheet getCachedAst() {
+      return cachedAst;
+    }
+
+    public String getContent() throws FileNotFound, CannotReadFile {
+      if (content == null)
+        rethrowProblem();
+      return content;
+    }
+
+    public ANTLRParser.ParseResult getParseResult() {
+      return parseResult;
+    }
+
+    /**
+     * @return tree built from parse result or <code>null</code> if the parse result has errors
+     */
+    public StyleSheet getAst() {
+      return ast;
+    }
+
+    /**
+     * @return problems found while building the tree
+     */
+    public ProblemsHandler getProblemsHandler() {
+      return problemsHandler;
+    }
+
+    private void rethrowProblem() throws FileNotFound, CannotReadFile {
+      if (problem instanceof FileNotFound)
+        throw (FileNotFound) problem;
+      if (problem instanceof CannotReadFile)
+        throw (CannotReadFile) problem;
+      throw new IllegalStateException("Prefetched import has neither result nor problem.", problem);
+    }
+
+  }
+
+  private static class ImportKey {
+
+    private final LessSource source;
+    private final boolean inline;
+
+    public ImportKey(LessSource source, boolean inline) {
+      this.source = source;
+      this.inline = inline;
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + source.hashCode();
+      result = prime * result + (inline ? 1231 : 1237);
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (obj == null || getClass() != obj.getClass())
+        return false;
+      ImportKey other = (ImportKey) obj;
+      return source.equals(other.source) && inline == other.inline;
+    }
+
+  }
+
+}
@@ -0,0 +1,160 @@
+package com.github.sommeri.less4j.core.compiler.stages;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.sommeri.less4j.core.ast.ASTCssNode;
+import com.github.sommeri.less4j.core.ast.ArgumentDeclaration;
+import com.github.sommeri.less4j.core.ast.BodyOwner;
+import com.github.sommeri.less4j.core.ast.CssString;
+import com.github.sommeri.less4j.core.ast.EscapedSelector;
+import com.github.sommeri.less4j.core.ast.EscapedValue;
+import com.github.sommeri.less4j.core.ast.Expression;
+import com.github.sommeri.less4j.core.ast.FixedNamePart;
+import com.github.sommeri.less4j.core.ast.GeneralBody;
+import com.github.sommeri.less4j.core.ast.ReusableStructure;
+import com.github.sommeri.less4j.core.ast.Variable;
+import com.github.sommeri.less4j.core.ast.VariableNamePart;
+import com.github.sommeri.less4j.core.compiler.expressions.ValueKeyBuilder;
+import com.github.sommeri.less4j.core.compiler.scopes.IScope;
+
+/**
+ * Remembers solved bodies of mixins whose result depends only on their arguments, so repeated
+ * calls with the same arguments do not compile the same body again.
+ *
+ * Mixin body qualifies only if it does not call other mixins or detached rulesets, does not
+ * declare variables or mixins and does not read other variables then its own parameters. Such
+ * body does not see anything from the caller scope. Arguments must be made of plain values, see
+ * {@link ValueKeyBuilder}. Expansions that reported problems or returned something into
+ * the caller scope are not stored.
+ *
+ * The cache lives as long as one references solver, e.g. one compilation.
+ */
+class MixinExpansionsCache {
+
+  private static final Pattern STR_INTERPOLATION = Pattern.compile("@\\{([^\\{\\}@]*)\\}");
+
+  private final ValueKeyBuilder keyBuilder = new ValueKeyBuilder();
+  private final Map<ReusableStructure, Boolean> independentMixins = new IdentityHashMap<ReusableStructure, Boolean>();
+  private final Map<ReusableStructure, Map<String, GeneralBody>> expansions = new IdentityHashMap<ReusableStructure, Map<String, GeneralBody>>();
+
+  /**
+   * @return key of the call or <code>null</code> if the call can not be cached
+   */
+  public String toKey(BodyOwner<?> bodyOwner, IScope arguments) {
+    if (!(bodyOwner instanceof ReusableStructure))
+      return null;
+
+    ReusableStructure mixin = (ReusableStructure) bodyOwner;
+    if (!isIndependent(mixin))
+      return null;
+
+    StringBuilder key = new StringBuilder();
+    for (ASTCssNode parameter : mixin.getParameters()) {
+      if (parameter instanceof ArgumentDeclaration) {
+        Expression value = arguments.getValue(((ArgumentDeclaration) parameter).getVariable());
+        if (value == null || !keyBuilder.append(key, value))
+          return null;
+      }
+      key.append(';');
+    }
+    return key.toString();
+  }
+
+  /**
+   * @return copy of solved mixin body members or <code>null</code> if the call was not cached
+   */
+  public List<ASTCssNode> getExpansion(BodyOwner<?> mixin, String key) {
+    Map<String, GeneralBody> mixinExpansions = expansions.get(mixin);
+    if (mixinExpansions == null)
+      return null;
+
+    GeneralBody expansion = mixinExpansions.get(key);
+    return expansion == null ? null : expansion.clone().getMembers();
+  }
+
+  public void storeExpansion(BodyOwner<?> mixin, String key, List<ASTCssNode> members) {
+    Map<String, GeneralBody> mixinExpansions = expansions.get(mixin);
+    if (mixinExpansions == null) {
+      mixinExpansions = new HashMap<String, GeneralBody>();
+      expansions.put((ReusableStructure) mixin, mixinExpansions);
+    }
+
+    GeneralBody expansion = new GeneralBody(mixin.getBody().getUnderlyingStructure());
+    for (ASTCssNode member : members) {
+      expansion.addMember(member.clone());
+    }
+    expansion.configureParentToAllChilds();
+    mixinExpansions.put(key, expansion);
+  }
+
+  private boolean isIndependent(ReusableStructure mixin) {
+    Boolean result = independentMixins.get(mixin);
+    if (result == null) {
+      Set<String> parameters = new HashSet<String>();
+      parameters.add(ReferencesSolver.ALL_ARGUMENTS);
+      for (ASTCssNode parameter : mixin.getParameters()) {
+        if (parameter instanceof ArgumentDeclaration)
+          parameters.add(((ArgumentDeclaration) parameter).getVariable().getName());
+      }
+      result = mixin.getBody() != null && readsOnly(mixin.getBody(), parameters);
+      independentMixins.put(mixin, result);
+    }
+    return result;
+  }
+
+  private boolean readsOnly(ASTCssNode node, Set<String> parameters) {
+    switch (node.getType()) {
+    case MIXIN_REFERENCE:
+    case DETACHED_RULESET_REFERENCE:
+    case DETACHED_RULESET:
+    case REUSABLE_STRUCTURE:
+    case VARIABLE_DECLARATION:
+    case INDIRECT_VARIABLE:
+    case IMPORT:
+    case EMBEDDED_SCRIPT:
+    case GUARD:
+    case FAULTY_NODE:
+    case FAULTY_EXPRESSION:
+      return false;
+    case VARIABLE:
+      return parameters.contains(((Variable) node).getName());
+    case VARIABLE_NAME_PART:
+      return parameters.contains(((VariableNamePart) node).getVariable().getName());
+    case STRING_EXPRESSION:
+      return interpolatesOnly(((CssString) node).getValue(), parameters);
+    case ESCAPED_VALUE:
+      return interpolatesOnly(((EscapedValue) node).getValue(), parameters);
+    case ESCAPED_SELECTOR:
+      return interpolatesOnly(((EscapedSelector) node).getValue(), parameters);
+    case FIXED_NAME_PART:
+      return interpolatesOnly(((FixedNamePart) node).getName(), parameters);
+    default:
+    }
+
+    for (ASTCssNode kid : node.getChilds()) {
+      if (!readsOnly(kid, parameters))
+        return false;
+    }
+    return true;
+  }
+
+  private boolean interpolatesOnly(String value, Set<String> parameters) {
+    if (value == null)
+      return true;
+
+    Matcher matcher = STR_INTERPOLATION.matcher(value);
+    while (matcher.find()) {
+      if (!parameters.contains("@" + matcher.group(1)))
+        return false;
+    }
+    return true;
+  }
+
+}
@@ -45,6 +45,7 @@ class MixinsRulesetsSolver {
   private final DefaultGuardHelper defaultGuardHelper;
   private final CallerCalleeScopeJoiner scopeManipulation = new CallerCalleeScopeJoiner();
   private final ExpressionManipulator expressionManipulator = new ExpressionManipulator();
+  private final MixinExpansionsCache expansionsCache = new MixinExpansionsCache();
 
   public MixinsRulesetsSolver(ReferencesSolver parentSolver, AstNodesStack semiCompiledNodes, ProblemsHandler problemsHandler, Configuration configuration) {
     this.parentSolver = parentSolver;
@@ -155,6 +156,15 @@ class MixinsRulesetsSolver {
 
     for (final BodyCompilationData data : mixinsToBeUsed) {
       final ScopeView mixinWorkingScope = data.getMixinWorkingScope();
+      // mixins that depend only on their arguments are compiled only once per arguments
+      final String expansionKey = expansionsCache.toKey(data.getCompiledBodyOwner(), data.getArguments());
+      if (expansionKey != null) {
+        List<ASTCssNode> expansion = expansionsCache.getExpansion(data.getCompiledBodyOwner(), expansionKey);
+        if (expansion != null) {
+          result.addMembers(expansion);
+          continue;
+        }
+      }
 
       // compilation must run in another localDataSnapshot, because imported
       // detached ruleset stored in
@@ -175,7 +185,11 @@ class MixinsRulesetsSolver {
           IScope arguments = data.getArguments();
           mixinWorkingScope.getParent().add(arguments);
 
+          int problemsCount = countProblems();
           Couple<List<ASTCssNode>, IScope> compiled = resolveCalledBody(callerScope, mixin, mixinWorkingScope, ReturnMode.MIXINS_AND_VARIABLES);
+          // cached expansion would not report problems again nor return anything
+          if (expansionKey != null && problemsCount == countProblems() && returnsNothing(compiled.getM()))
+            expansionsCache.storeExpansion(mixin, expansionKey, compiled.getT());
           // update mixin replacements and update scope with imported variables
           // and mixins
           result.addMembers(compiled.getT());
@@ -192,6 +206,14 @@ class MixinsRulesetsSolver {
     return result;
   }
 
+  private boolean returnsNothing(IScope returnValues) {
+    return returnValues.getLocalVariables().isEmpty() && returnValues.getAllMixins().isEmpty();
+  }
+
+  private int countProblems() {
+    return problemsHandler.getErrors().size() + problemsHandler.getWarnings().size();
+  }
+
   public GeneralBody buildDetachedRulesetReplacement(DetachedRulesetReference reference, IScope callerScope, DetachedRuleset detachedRuleset, IScope detachedRulesetScope) {
     IScope mixinWorkingScope = scopeManipulation.joinIfIndependent(callerScope, detachedRulesetScope);
     Couple<List<ASTCssNode>, IScope> compiled = resolveCalledBody(callerScope, detachedRuleset, mixinWorkingScope, ReturnMode.MIXINS);
@@ -0,0 +1,168 @@
+package com.github.sommeri.less4j.core.compiler.stages;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.LessSource.CannotReadFile;
+import com.github.sommeri.less4j.LessSource.FileNotFound;
+import com.github.sommeri.less4j.LessSource.ReadCallback;
+import com.github.sommeri.less4j.LessSource.StringSourceException;
+import com.github.sommeri.less4j.core.ast.ASTCssNode;
+import com.github.sommeri.less4j.core.ast.ASTCssNodeType;
+import com.github.sommeri.less4j.core.ast.CssString;
+import com.github.sommeri.less4j.core.ast.Expression;
+import com.github.sommeri.less4j.core.ast.FunctionExpression;
+
+/**
+ * Reads files used by <code>data-uri</code>, <code>image-size</code>, <code>image-width</code>
+ * and <code>image-height</code> functions on an executor before the functions are evaluated.
+ * Files are read by {@link LessSource#getBytesAsync(Executor, ReadCallback)}, so they are
+ * downloaded concurrently instead of one after another. Only calls with string argument that
+ * does not contain variables are prefetched.
+ *
+ * Functions are shared by all compilations, so the prefetcher is bound to the thread that
+ * runs the compilation between {@link #start()} and {@link #stop()}. Functions evaluated
+ * without prefetcher read files themselves.
+ */
+public class ResourcesPrefetcher {
+
+  private static final ThreadLocal<ResourcesPrefetcher> CURRENT = new ThreadLocal<ResourcesPrefetcher>();
+
+  private final Executor executor;
+  // used only by the compiling thread
+  private final Map<LessSource, PendingBytes> prefetched = new HashMap<LessSource, PendingBytes>();
+
+  public ResourcesPrefetcher(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Starts reading of files used by functions in the tree.
+   */
+  public void prefetchResources(ASTCssNode tree) {
+    List<ASTCssNode> stack = new ArrayList<ASTCssNode>();
+    stack.add(tree);
+    while (!stack.isEmpty()) {
+      ASTCssNode node = stack.remove(stack.size() - 1);
+      if (node.getType() == ASTCssNodeType.FUNCTION)
+        prefetch((FunctionExpression) node);
+      for (ASTCssNode kid : node.getChilds()) {
+        if (kid != null)
+          stack.add(kid);
+      }
+    }
+  }
+
+  /**
+   * Binds the prefetcher to the current thread.
+   */
+  public void start() {
+    CURRENT.set(this);
+  }
+
+  /**
+   * Unbinds the prefetcher from the current thread, files that did not start to be read are
+   * not read.
+   */
+  public void stop() {
+    if (CURRENT.get() == this)
+      CURRENT.remove();
+    for (PendingBytes pending : prefetched.values()) {
+      pending.cancel();
+    }
+    prefetched.clear();
+  }
+
+  /**
+   * Returns prefetched content of the source if the current thread has prefetcher that read it,
+   * otherwise reads the source. Files used multiple times are prefetched once.
+   */
+  public static byte[] getBytes(LessSource source) throws FileNotFound, CannotReadFile {
+    ResourcesPrefetcher prefetcher = CURRENT.get();
+    PendingBytes pending = prefetcher == null ? null : prefetcher.prefetched.get(source);
+    if (pending == null)
+      return source.getBytes();
+
+    try {
+      byte[] result = pending.get();
+      if (pending.problem instanceof FileNotFound)
+        throw (FileNotFound) pending.problem;
+      if (pending.problem instanceof CannotReadFile)
+        throw (CannotReadFile) pending.problem;
+      return result;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return source.getBytes();
+    }
+  }
+
+  private void prefetch(FunctionExpression call) {
+    String name = call.getName().toLowerCase();
+    boolean dataUri = name.equals("data-uri");
+    if (!dataUri && !name.equals("image-size") && !name.equals("image-width") && !name.equals("image-height"))
+      return;
+
+    // file name is the last argument
+    Expression parameter = call.getParameter();
+    List<Expression> parameters = parameter == null ? null : parameter.splitByComma();
+    if (parameters == null || parameters.isEmpty())
+      return;
+    Expression last = parameters.get(parameters.size() - 1);
+    if (last.getType() != ASTCssNodeType.STRING_EXPRESSION)
+      return;
+
+    String filename = ((CssString) last).getValue();
+    if (filename.contains("@{"))
+      return;
+    if (dataUri)
+      filename = filename.split("#", 2)[0];
+
+    LessSource source = call.getSource();
+    if (source == null)
+      return;
+    try {
+      LessSource dataSource = source.relativeSource(filename);
+      if (!prefetched.containsKey(dataSource)) {
+        PendingBytes pending = new PendingBytes(dataSource);
+        prefetched.put(dataSource, pending);
+        pending.start();
+      }
+    } catch (FileNotFound ex) {
+      // function reports the problem when evaluated
+    } catch (CannotReadFile ex) {
+    } catch (StringSourceException ex) {
+    }
+  }
+
+  private class PendingBytes extends BackgroundLoad<byte[]> implements ReadCallback<byte[]> {
+
+    private final LessSource source;
+    private volatile Exception problem;
+
+    public PendingBytes(LessSource source) {
+      super(executor);
+      this.source = source;
+    }
+
+    public void start() {
+      source.getBytesAsync(getStepsExecutor(), this);
+    }
+
+    @Override
+    public void finished(byte[] result) {
+      finish(result);
+    }
+
+    @Override
+    public void failed(Exception problem) {
+      this.problem = problem;
+      finish(null);
+    }
+
+  }
+
+}
@@ -1,12 +1,15 @@
 package com.github.sommeri.less4j.core.compiler.stages;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import com.github.sommeri.less4j.LessCompiler.Cache;
 import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessCompiler.ContentAwareCache;
 import com.github.sommeri.less4j.LessSource;
 import com.github.sommeri.less4j.LessSource.CannotReadFile;
 import com.github.sommeri.less4j.LessSource.FileNotFound;
@@ -20,6 +23,7 @@ import com.github.sommeri.less4j.core.ast.InlineContent;
 import com.github.sommeri.less4j.core.ast.Media;
 import com.github.sommeri.less4j.core.ast.StyleSheet;
 import com.github.sommeri.less4j.core.compiler.expressions.TypesConversionUtils;
+import com.github.sommeri.less4j.core.compiler.stages.ImportsPrefetcher.PrefetchedImport;
 import com.github.sommeri.less4j.core.parser.ANTLRParser;
 import com.github.sommeri.less4j.core.parser.ASTBuilder;
 import com.github.sommeri.less4j.core.parser.HiddenTokenAwareTree;
@@ -33,13 +37,17 @@ public class SingleImportSolver {
   private ASTManipulator astManipulator = new ASTManipulator();
 
   private Cache astCache;
+  private ImportsPrefetcher prefetcher;
+  private ANTLRParser parser = new ANTLRParser();
+  // trees taken from cache reference the source they were parsed from, not the one compiled now 
+  private Map<LessSource, LessSource> compiledSources = new HashMap<LessSource, LessSource>();
 
   public SingleImportSolver(ProblemsHandler problemsHandler, Configuration configuration) {
     this.problemsHandler = problemsHandler;
     this.configuration = configuration;
     this.astCache = configuration.getCache();
     if (astCache == null) {
-      final HashMap<Object, Object> map = new HashMap<Object, Object>();
+      final Map<Object, Object> map = Collections.synchronizedMap(new HashMap<Object, Object>());
       astCache = new Cache() {
         @Override
         public Object getAst(LessSource key) {
@@ -52,27 +60,44 @@ public class SingleImportSolver {
         }
       };
     }
+    if (configuration.getImportExecutor() != null)
+      prefetcher = new ImportsPrefetcher(configuration.getImportExecutor(), astCache, configuration.isDetachParseTrees());
+  }
+
+  /**
+   * Imports of the sheet are resolved relative to the source. If the configuration has import
+   * executor, files imported by the sheet start to be read and parsed in background.
+   */
+  public void sheetLoaded(StyleSheet sheet, LessSource source) {
+    if (source == null)
+      return;
+
+    compiledSources.put(source, source);
+    if (prefetcher != null)
+      prefetcher.prefetchImports(sheet, source);
+  }
+
+  /**
+   * Imports were solved, imports still being prefetched are not needed anymore.
+   */
+  public void importsSolved() {
+    if (prefetcher != null)
+      prefetcher.finish();
   }
 
   public ASTCssNode importEncountered(Import node, LessSource source, AlreadyImportedSources alreadyImportedSources) {
+    if (compiledSources.containsKey(source))
+      source = compiledSources.get(source);
     String filename = conversionUtils.extractFilename(node.getUrlExpression(), problemsHandler, configuration);
     if (filename == null) {
       problemsHandler.errorWrongImport(node.getUrlExpression());
       return null;
     }
-    String urlParams = "";
-    int paramsIndx = filename.lastIndexOf("?");
-    if (paramsIndx != -1) {
-      urlParams = filename.substring(paramsIndx);
-      filename = filename.substring(0, paramsIndx);
-    }
-
+    filename = toImportedFilename(node, filename);
     // css file imports should be left as they are
-    // FIXME ! they should be relativized
-    if (!node.isInline() && treatAsCss(node, filename))
+    if (filename == null)
       return null;
 
-    filename = addLessSuffixIfNeeded(filename, urlParams);
     LessSource importedSource;
     try {
       importedSource = source.relativeSource(filename);
@@ -89,13 +114,21 @@ public class SingleImportSolver {
 
     // import once should not import a file that was already imported
     if (node.isImportOnce() && alreadyImportedSources.alreadyVisited(importedSource)) {
+      if (prefetcher != null)
+        prefetcher.skip(node, importedSource);
       astManipulator.removeFromBody(node);
       return null;
     }
 
-    String importedContent;
+    PrefetchedImport prefetched = prefetcher == null ? null : prefetcher.take(node, importedSource);
+    // cache checks whether the source changed, content is read only if it has no valid tree
+    StyleSheet cachedAst = null;
+    if (!node.isInline())
+      cachedAst = prefetched != null ? prefetched.getCachedAst() : (StyleSheet) astCache.getAst(importedSource);
+    String importedContent = null;
     try {
-      importedContent = importedSource.getContent();
+      if (cachedAst == null)
+        importedContent = prefetched != null ? prefetched.getContent() : importedSource.getContent();
       alreadyImportedSources.add(importedSource);
     } catch (FileNotFound e) {
       return importFileNotFound(node, filename);
@@ -108,7 +141,7 @@ public class SingleImportSolver {
       return replaceByInlineValue(node, importedContent);
     }
 
-    StyleSheet importedAst = buildImportedAst(node, importedSource, importedContent);
+    StyleSheet importedAst = buildImportedAst(node, importedSource, importedContent, cachedAst, prefetched);
 
     if (node.isReferenceOnly() || node.isSilent()) {
       astManipulator.setTreeSilentness(importedAst, true);
@@ -136,8 +169,10 @@ public class SingleImportSolver {
     return replaceByInlineValue(node, "");
   }
 
-  private StyleSheet buildImportedAst(Import node, LessSource source, String content) {
-    StyleSheet importedAst = getImportedAst(node, source, content);
+  private StyleSheet buildImportedAst(Import node, LessSource source, String content, StyleSheet cachedAst, PrefetchedImport prefetched) {
+    if (cachedAst != null)
+      sheetLoaded(cachedAst, source);
+    StyleSheet importedAst = cachedAst != null ? cachedAst.clone() : parseImportedAst(node, source, content, prefetched);
 
     // add media queries if needed
     if (node.hasMediums()) {
@@ -157,43 +192,72 @@ public class SingleImportSolver {
     return importedAst;
   }
 
-  private StyleSheet getImportedAst(Import node, LessSource source, String content) {
-    StyleSheet importedAst = (StyleSheet) astCache.getAst(source);
-    if (importedAst == null) {
-      importedAst = parseContent(node, content, source);
-      astCache.setAst(source, importedAst);
+  private StyleSheet parseImportedAst(Import node, LessSource source, String content, PrefetchedImport prefetched) {
+    ANTLRParser.ParseResult parsedSheet = prefetched != null ? prefetched.getParseResult() : parseContent(content, source);
+    if (parsedSheet.hasErrors()) {
+      // faulty sheets are not cached, so every compilation that imports them reports errors
+      StyleSheet result = new StyleSheet(node.getUnderlyingStructure());
+      result.addMember(new FaultyNode(node));
+      problemsHandler.addErrors(parsedSheet.getErrors());
+      return result;
     }
+
+    StyleSheet importedAst;
+    if (prefetched != null) {
+      // problems found in background are reported now, so they keep their order
+      problemsHandler.addErrors(prefetched.getProblemsHandler().getErrors());
+      problemsHandler.addWarnings(prefetched.getProblemsHandler().getWarnings());
+      importedAst = prefetched.getAst();
+    } else {
+      ASTBuilder astBuilder = new ASTBuilder(problemsHandler);
+      astBuilder.setDetachParseTrees(configuration.isDetachParseTrees());
+      importedAst = astBuilder.parseStyleSheet(parsedSheet.getTree());
+    }
+    sheetLoaded(importedAst, source);
+    // the source may have changed since it was read, content aware cache needs what was parsed
+    if (astCache instanceof ContentAwareCache)
+      ((ContentAwareCache) astCache).setAst(source, content, importedAst);
+    else
+      astCache.setAst(source, importedAst);
     return importedAst.clone();
   }
 
-  private StyleSheet parseContent(Import importNode, String importedContent, LessSource source) {
-    ANTLRParser parser = new ANTLRParser();
-    ANTLRParser.ParseResult parsedSheet = parser.parseStyleSheet(importedContent, source);
-    if (parsedSheet.hasErrors()) {
-      StyleSheet result = new StyleSheet(importNode.getUnderlyingStructure());
-      result.addMember(new FaultyNode(importNode));
-      problemsHandler.addErrors(parsedSheet.getErrors());
-      return result;
+  private ANTLRParser.ParseResult parseContent(String importedContent, LessSource source) {
+    return parser.parseStyleSheet(importedContent, source);
+  }
+
+  /**
+   * @return name of imported file with url parameters and less suffix if needed or 
+   * <code>null</code> if the import is css import that should be left as it is 
+   */
+  static String toImportedFilename(Import node, String filename) {
+    String urlParams = "";
+    int paramsIndx = filename.lastIndexOf("?");
+    if (paramsIndx != -1) {
+      urlParams = filename.substring(paramsIndx);
+      filename = filename.substring(0, paramsIndx);
     }
-    ASTBuilder astBuilder = new ASTBuilder(problemsHandler);
-    StyleSheet lessStyleSheet = astBuilder.parseStyleSheet(parsedSheet.getTree());
-    return lessStyleSheet;
 
+    // FIXME ! css imports should be relativized
+    if (!node.isInline() && treatAsCss(node, filename))
+      return null;
+
+    return addLessSuffixIfNeeded(filename, urlParams);
   }
 
-  private String addLessSuffixIfNeeded(String filename, String urlParams) {
+  private static String addLessSuffixIfNeeded(String filename, String urlParams) {
     if ((new File(filename)).getName().contains("."))
       return filename;
 
     return filename + ".less" + urlParams;
   }
 
-  private boolean treatAsCss(Import node, String filename) {
+  private static boolean treatAsCss(Import node, String filename) {
     ImportContent contentKind = node.getContentKind();
     return contentKind == ImportContent.CSS || (contentKind == ImportContent.SUFFIX_BASED && isCssFile(filename));
   }
 
-  private boolean isCssFile(String filename) {
+  private static boolean isCssFile(String filename) {
     String lowerCase = filename.toLowerCase();
     return lowerCase.endsWith(".css") || lowerCase.endsWith("/css");
   }
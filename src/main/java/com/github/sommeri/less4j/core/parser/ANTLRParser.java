@@ -4,11 +4,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
 import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CharStream;
 import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.ParserRuleReturnScope;
@@ -24,7 +24,9 @@ import com.github.sommeri.less4j.LessSource;
 import com.github.sommeri.less4j.utils.debugonly.DebugAndTestPrint;
 
 /**
- * 
+ * Parser keeps no state between calls. Lexer and parser are expensive to create, so each 
+ * thread reuses its own pair and resets it before each parse. 
+ * The same instance can be used by multiple threads at the same time.
  * 
  */
 public class ANTLRParser {
@@ -32,6 +34,13 @@ public class ANTLRParser {
   private final boolean isDebug = false;
   private static final List<Integer> KEEP_HIDDEN_TOKENS = Arrays.asList(LessLexer.COMMENT, LessLexer.NEW_LINE);
 
+  private static final ThreadLocal<ReusableRecognizers> RECOGNIZERS = new ThreadLocal<ReusableRecognizers>() {
+    @Override
+    protected ReusableRecognizers initialValue() {
+      return new ReusableRecognizers();
+    }
+  };
+
   public ParseResult parseStyleSheet(String styleSheet, LessSource source) {
     return parse(styleSheet, source, InputType.STYLE_SHEET);
   }
@@ -61,14 +70,18 @@ public class ANTLRParser {
   }
   
   private ParseResult parse(String input, LessSource source, InputType inputType) {
+    if (isDebug)
+      DebugAndTestPrint.printTokenStream(input);
+    ReusableRecognizers recognizers = RECOGNIZERS.get();
+    // parse started while another one is running in the same thread can not share them  
+    if (recognizers.inUse)
+      recognizers = new ReusableRecognizers();
     try {
-      if (isDebug)
-        DebugAndTestPrint.printTokenStream(input);
       List<Problem> errors = new ArrayList<Problem>();
-      LessLexer lexer = createLexer(input, source, errors);
+      LessLexer lexer = recognizers.resetLexer(input, source, errors);
 
       CollectorTokenSource tokenSource = new CollectorTokenSource(lexer, KEEP_HIDDEN_TOKENS);
-      LessParser parser = createParser(tokenSource, source, errors);
+      LessParser parser = recognizers.resetParser(tokenSource, source, errors);
       ParserRuleReturnScope returnScope = inputType.parseTree(parser);
       
       HiddenTokenAwareTree ast = (HiddenTokenAwareTree) returnScope.getTree();
@@ -78,23 +91,12 @@ public class ANTLRParser {
       return new ParseResultImpl(ast, new ArrayList<Problem>(errors));
     } catch (RecognitionException e) {
       throw new IllegalStateException("Recognition exception is never thrown, only declared.");
+    } finally {
+      recognizers.release();
     }
   }
 
-  private LessParser createParser(TokenSource tokenSource, LessSource source, List<Problem> errors) {
-    CommonTokenStream tokens = new CommonTokenStream(tokenSource);
-    LessParser parser = new LessParser(tokens, errors);
-    parser.setTreeAdaptor(new HiddenTokenAwareTreeAdaptor(source));
-    return parser;
-  }
-
-  private LessLexer createLexer(String expression, LessSource source, List<Problem> errors) {
-    ANTLRStringStream input = new ANTLRStringStream(expression);
-    LessLexer lexer = new LessLexer(source, input, errors);
-    return lexer;
-  }
-
-  private HiddenTokenAwareTree merge(HiddenTokenAwareTree ast, LinkedList<CommonToken> hiddenTokens) {
+  private HiddenTokenAwareTree merge(HiddenTokenAwareTree ast, List<CommonToken> hiddenTokens) {
     ListToTreeCombiner combiner = new ListToTreeCombiner();
     combiner.associate(ast, hiddenTokens);
     return ast;
@@ -184,7 +186,7 @@ class CollectorTokenSource implements TokenSource {
 
   private final TokenSource source;
   private final Set<Integer> collectTokenTypes = new HashSet<Integer>();
-  private final LinkedList<CommonToken> collectedTokens = new LinkedList<CommonToken>();
+  private final List<CommonToken> collectedTokens = new ArrayList<CommonToken>();
 
   public CollectorTokenSource(TokenSource source, Collection<Integer> collectTokenTypes) {
     super();
@@ -215,7 +217,7 @@ class CollectorTokenSource implements TokenSource {
     return collectTokenTypes.contains(nextToken.getType());
   }
 
-  public LinkedList<CommonToken> getCollectedTokens() {
+  public List<CommonToken> getCollectedTokens() {
     return collectedTokens;
   }
 
@@ -268,3 +270,87 @@ class HiddenTokenAwareTreeAdaptor extends CommonTreeAdaptor {
   }
 
 }
+
+/**
+ * Lexer and parser that are reset before each parse instead of being created again. They 
+ * do not keep references to the input between parses.
+ */
+class ReusableRecognizers {
+
+  private final LessLexer lexer = new LessLexer(null, null, new ArrayList<Problem>());
+  private final LessParser parser = new LessParser(null, new ArrayList<Problem>());
+  boolean inUse = false;
+
+  public LessLexer resetLexer(String input, LessSource source, List<Problem> errors) {
+    inUse = true;
+    lexer.reset(source, new StringCharStream(input), errors);
+    return lexer;
+  }
+
+  public LessParser resetParser(TokenSource tokenSource, LessSource source, List<Problem> errors) {
+    parser.reset(new CommonTokenStream(tokenSource), errors);
+    parser.setTreeAdaptor(new HiddenTokenAwareTreeAdaptor(source));
+    return parser;
+  }
+
+  public void release() {
+    lexer.reset(null, null, null);
+    parser.reset(null, null);
+    parser.setTreeAdaptor(null);
+    inUse = false;
+  }
+
+}
+
+/**
+ * Char stream reading directly from the string. Unlike {@link ANTLRStringStream}, it does 
+ * not copy the whole input into a new array.
+ */
+class StringCharStream extends ANTLRStringStream {
+
+  private final String input;
+
+  public StringCharStream(String input) {
+    super();
+    this.input = input;
+    this.n = input.length();
+  }
+
+  @Override
+  public void consume() {
+    if (p < n) {
+      charPositionInLine++;
+      if (input.charAt(p) == '\n') {
+        line++;
+        charPositionInLine = 0;
+      }
+      p++;
+    }
+  }
+
+  @Override
+  public int LA(int i) {
+    if (i == 0)
+      return 0;
+    if (i < 0) {
+      i++;
+      if ((p + i - 1) < 0)
+        return CharStream.EOF;
+    }
+
+    if ((p + i - 1) >= n)
+      return CharStream.EOF;
+    return input.charAt(p + i - 1);
+  }
+
+  @Override
+  public String substring(int start, int stop) {
+    return input.substring(start, stop + 1);
+  }
+
+  @Override
+  public String toString() {
+    return input;
+  }
+
+}
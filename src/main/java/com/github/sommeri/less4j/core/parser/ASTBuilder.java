@@ -20,12 +20,27 @@ import com.github.sommeri.less4j.core.validators.LessAstValidator;
 public class ASTBuilder {
   
   private final ProblemsHandler problemsHandler;
+  private boolean detachParseTrees = false;
   
   public ASTBuilder(ProblemsHandler problemsHandler) {
     super();
     this.problemsHandler = problemsHandler;
   }
 
+  public boolean isDetachParseTrees() {
+    return detachParseTrees;
+  }
+
+  /**
+   * If set to <code>true</code>, parse trees under built nodes are replaced by 
+   * {@link SourcePositionTree}s once the tree is built. Built tree then does not keep tokens
+   * and content of parsed sheet in memory, but still knows source positions needed for error 
+   * messages and source maps. Nodes that shared the same parse tree share the same position.
+   */
+  public void setDetachParseTrees(boolean detachParseTrees) {
+    this.detachParseTrees = detachParseTrees;
+  }
+
   public StyleSheet parseStyleSheet(HiddenTokenAwareTree tree) {
     ASTCssNode result = parseAnything(tree);
     return (StyleSheet) result;
@@ -54,6 +69,8 @@ public class ASTBuilder {
     convertComments(result);
     solveParentChildRelationShips(result);
     checkForWarnings(result);
+    if (detachParseTrees)
+      new ParseTreeDetacher().detach(result);
     return result;
   }
 
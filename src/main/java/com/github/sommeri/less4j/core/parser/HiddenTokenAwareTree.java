@@ -1,25 +1,39 @@
 package com.github.sommeri.less4j.core.parser;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.Token;
 import org.antlr.runtime.tree.CommonTree;
+import org.antlr.runtime.tree.Tree;
 
 import com.github.sommeri.less4j.LessSource;
-
-public class HiddenTokenAwareTree extends CommonTree implements Cloneable {
+import com.github.sommeri.less4j.core.AstSerializer;
+
+/**
+ * Most nodes have no hidden tokens, so lists of preceding, following and orphan tokens are 
+ * allocated only when the first token is added. Getters return empty read only list until then. 
+ * 
+ * Serializable, so parsed trees can be stored out of memory. ANTLR superclasses are not
+ * serializable, their state is written by {@link #writeObject(ObjectOutputStream)}. Tokens 
+ * must be detached from the input char stream before serialization, otherwise they lose
+ * their text. {@link AstSerializer} does that.
+ */
+public class HiddenTokenAwareTree extends CommonTree implements Cloneable, Serializable {
 
   private final LessSource source;
-  private List<CommonToken> preceding = new LinkedList<CommonToken>();
-  private List<CommonToken> orphans = new LinkedList<CommonToken>();
-  private List<CommonToken> following = new LinkedList<CommonToken>();
+  private transient List<CommonToken> preceding;
+  private transient List<CommonToken> orphans;
+  private transient List<CommonToken> following;
   private CommonToken tokenAsCommon;
   
-  private LexerLogic grammarKnowledge = new LexerLogic();
+  private static final LexerLogic grammarKnowledge = new LexerLogic();
   protected int generalType = -3;
   private Token stopToken;
 
@@ -70,20 +84,17 @@ public class HiddenTokenAwareTree extends CommonTree implements Cloneable {
   }
 
   public List<CommonToken> getPreceding() {
-    return preceding;
-
+    return nonNull(preceding);
   }
 
   public List<CommonToken> chopPreceedingUpToLastOfType(int type) {
-    List<CommonToken> result = new ArrayList<CommonToken>();
-    List<CommonToken> preceding = getPreceding();
-    
-    int index = lastTokenOfType(preceding, type);
-    for (int i = 0; i <= index; i++) {
-      CommonToken next = preceding.remove(0);
-      result.add(next);
-    }
-    
+    int index = lastTokenOfType(getPreceding(), type);
+    if (index == -1)
+      return new ArrayList<CommonToken>();
+
+    List<CommonToken> chopped = preceding.subList(0, index + 1);
+    List<CommonToken> result = new ArrayList<CommonToken>(chopped);
+    chopped.clear();
     return result;
   }
 
@@ -100,43 +111,65 @@ public class HiddenTokenAwareTree extends CommonTree implements Cloneable {
   }
 
   public List<CommonToken> getFollowing() {
-    return following;
+    return nonNull(following);
   }
 
   public List<CommonToken> getOrphans() {
-    return orphans;
+    return nonNull(orphans);
   }
 
   public void addPreceding(CommonToken token) {
-    preceding.add(token);
+    preceding = add(preceding, token);
   }
 
   public void addPreceding(List<CommonToken> tokens) {
-    preceding.addAll(tokens);
+    preceding = addAll(preceding, preceding == null ? 0 : preceding.size(), tokens);
   }
 
   public void addBeforePreceding(List<CommonToken> tokens) {
-    preceding.addAll(0, tokens);
+    preceding = addAll(preceding, 0, tokens);
   }
 
   public void addOrphan(CommonToken token) {
-    orphans.add(token);
+    orphans = add(orphans, token);
   }
 
   public void addOrphans(List<CommonToken> tokens) {
-    orphans.addAll(tokens);
+    orphans = addAll(orphans, orphans == null ? 0 : orphans.size(), tokens);
   }
 
   public void addFollowing(CommonToken token) {
-    following.add(token);
+    following = add(following, token);
   }
 
   public void addBeforeFollowing(List<CommonToken> tokens) {
-    following.addAll(0, tokens);
+    following = addAll(following, 0, tokens);
   }
 
   public void addFollowing(List<CommonToken> tokens) {
-    following.addAll(tokens);
+    following = addAll(following, following == null ? 0 : following.size(), tokens);
+  }
+
+  private static List<CommonToken> nonNull(List<CommonToken> list) {
+    return list == null ? Collections.<CommonToken> emptyList() : list;
+  }
+
+  private static List<CommonToken> add(List<CommonToken> list, CommonToken token) {
+    if (list == null)
+      list = new ArrayList<CommonToken>(2);
+    list.add(token);
+    return list;
+  }
+
+  // tokens are always copied, the added list may be cleared later
+  private static List<CommonToken> addAll(List<CommonToken> list, int index, List<CommonToken> tokens) {
+    if (tokens.isEmpty())
+      return list;
+    if (list == null)
+      return new ArrayList<CommonToken>(tokens);
+
+    list.addAll(index, tokens);
+    return list;
   }
 
   public void pushHiddenToKids() {
@@ -162,11 +195,11 @@ public class HiddenTokenAwareTree extends CommonTree implements Cloneable {
   public void moveHidden(HiddenTokenAwareTree previous, HiddenTokenAwareTree next) {
     if (previous != null) {
       previous.addFollowing(getPreceding());
-      preceding = new LinkedList<CommonToken>();
+      removePreceding();
     }
     if (next != null) {
       next.addBeforePreceding(getFollowing());
-      following = new LinkedList<CommonToken>();
+      removeFollowing();
     }
   }
 
@@ -257,7 +290,7 @@ public class HiddenTokenAwareTree extends CommonTree implements Cloneable {
     HiddenTokenAwareTree nextSibling = getNextSibling();
     if (nextSibling != null) {
       nextSibling.addBeforePreceding(getFollowing());
-      getFollowing().clear();
+      removeFollowing();
     }
   }
 
@@ -265,16 +298,16 @@ public class HiddenTokenAwareTree extends CommonTree implements Cloneable {
     HiddenTokenAwareTree previousSibling = getPreviousSibling();
     if (previousSibling != null) {
       previousSibling.addFollowing(getPreceding());
-      getPreceding().clear();
+      removePreceding();
     }
   }
 
   public void removePreceding() {
-    preceding = new ArrayList<CommonToken>();
+    preceding = null;
   }
 
   public void removeFollowing() {
-    following = new ArrayList<CommonToken>();
+    following = null;
   }
 
   public boolean isReal() {
@@ -284,9 +317,9 @@ public class HiddenTokenAwareTree extends CommonTree implements Cloneable {
   public HiddenTokenAwareTree commentsLessClone() {
     try {
       HiddenTokenAwareTree clone = (HiddenTokenAwareTree) super.clone();
-      clone.preceding = new LinkedList<CommonToken>();
-      clone.orphans = new LinkedList<CommonToken>();
-      clone.following = new LinkedList<CommonToken>();
+      clone.preceding = null;
+      clone.orphans = null;
+      clone.following = null;
       
       return clone;
     } catch (CloneNotSupportedException e) {
@@ -326,6 +359,58 @@ public class HiddenTokenAwareTree extends CommonTree implements Cloneable {
   }
 
 
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeObject(token);
+    AstSerializer.writeVarint(out, startIndex);
+    AstSerializer.writeVarint(out, stopIndex);
+    // lists are written inline, most of them are empty
+    writeList(out, getPreceding());
+    writeList(out, getOrphans());
+    writeList(out, getFollowing());
+    writeList(out, getChildren());
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    token = (Token) in.readObject();
+    startIndex = AstSerializer.readVarint(in);
+    stopIndex = AstSerializer.readVarint(in);
+    preceding = readTokens(in);
+    orphans = readTokens(in);
+    following = readTokens(in);
+    List<Tree> kids = readList(in, new ArrayList<Tree>());
+    if (!kids.isEmpty()) {
+      children = createChildrenList();
+      for (Tree kid : kids) {
+        kid.setParent(this);
+        kid.setChildIndex(children.size());
+        children.add(kid);
+      }
+    }
+  }
+
+  private void writeList(ObjectOutputStream out, List<?> list) throws IOException {
+    AstSerializer.writeVarint(out, list.size());
+    for (Object element : list) {
+      out.writeObject(element);
+    }
+  }
+
+  private List<CommonToken> readTokens(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    List<CommonToken> result = readList(in, new ArrayList<CommonToken>());
+    return result.isEmpty() ? null : result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> List<T> readList(ObjectInputStream in, List<T> result) throws IOException, ClassNotFoundException {
+    int size = AstSerializer.readLength(in);
+    for (int i = 0; i < size; i++) {
+      result.add((T) in.readObject());
+    }
+    return result;
+  }
+
   public void setStopToken(Token stopToken) {
     this.stopToken = stopToken;
   }
@@ -3,7 +3,6 @@ package com.github.sommeri.less4j.core.parser;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.antlr.runtime.CommonToken;
@@ -15,35 +14,38 @@ import com.github.sommeri.less4j.core.parser.LessLexer;
  * This class is NOT thread-safe. 
  * 
  * The combined merges a list of tokens with abstract syntax tree. The merging algorithm 
- * assigns each token to exactly one node in abstract syntax tree.
+ * assigns each token to exactly one node in abstract syntax tree. Both the tree and the 
+ * tokens are walked only once, tokens are read by moving a cursor over the list.
  * 
  */
 public class ListToTreeCombiner {
 
-  private LinkedList<CommonToken> hiddenTokens;
+  private List<CommonToken> hiddenTokens;
+  private int cursor;
 
-  public void associate(HiddenTokenAwareTree ast, LinkedList<CommonToken> hiddenTokens) {
+  public void associate(HiddenTokenAwareTree ast, List<CommonToken> hiddenTokens) {
     initialize(hiddenTokens);
 
-    LinkedList<HiddenTokenAwareTree> children = getChildren(ast);
+    List<HiddenTokenAwareTree> children = getChildren(ast);
     associateAllchilds(children);
 
     if (children.isEmpty()) {
       addAllContainedTokens(ast);
     } else {
-      HiddenTokenAwareTree lastChild = children.getLast();
-      lastChild.addFollowing(hiddenTokens);
+      HiddenTokenAwareTree lastChild = children.get(children.size() - 1);
+      lastChild.addFollowing(readPrefix(Integer.MAX_VALUE));
     }
   }
 
-  private void initialize(LinkedList<CommonToken> hiddenTokens) {
+  private void initialize(List<CommonToken> hiddenTokens) {
     this.hiddenTokens = hiddenTokens;
+    this.cursor = 0;
   }
 
   private void associateAsChild(HiddenTokenAwareTree ast) {
     addAllPrecedingTokens(ast);
 
-    LinkedList<HiddenTokenAwareTree> children = getChildren(ast);
+    List<HiddenTokenAwareTree> children = getChildren(ast);
     if (children.isEmpty()) {
       addAllContainedTokens(ast);
       return;
@@ -53,7 +55,7 @@ public class ListToTreeCombiner {
     addFollowingTokens(lastChild, ast.getTokenStopIndex());
   }
 
-  private HiddenTokenAwareTree associateAllchilds(LinkedList<HiddenTokenAwareTree> children) {
+  private HiddenTokenAwareTree associateAllchilds(List<HiddenTokenAwareTree> children) {
     HiddenTokenAwareTree previousChild = null;
     for (HiddenTokenAwareTree child : children) {
       assignFirstCommentsSegment(previousChild, child);
@@ -68,27 +70,21 @@ public class ListToTreeCombiner {
     target.addFollowing(result);
   }
 
-//  private int stopIndexForLastChild(HiddenTokenAwareTree parent) {
-//    int result = parent.getTokenStopIndex();
-//    HiddenTokenAwareTree parentsSibling = parent.getNextSibling();
-//    if (parentsSibling!=null)
-//    return result;
-//  }
-
   private void assignFirstCommentsSegment(HiddenTokenAwareTree firstChild, HiddenTokenAwareTree secondChild) {
     if (firstChild == null)
       return;
 
-    LinkedList<CommonToken> tail = readTillNewLine(secondChild.getTokenStartIndex());
+    List<CommonToken> tail = readTillNewLine(secondChild.getTokenStartIndex());
     if (tail.isEmpty())
       return;
 
-    CommonToken lastInTail = tail.peekLast();
+    CommonToken lastInTail = tail.get(tail.size() - 1);
     if (lastInTail.getType() == LessLexer.NEW_LINE)
       firstChild.addFollowing(tail);
     else
       secondChild.addPreceding(tail);
   }
+
   //this method assumes that ast is empty
   private void addAllContainedTokens(HiddenTokenAwareTree ast) {
     int actualTokenIndex = ast.getTokenIndex();
@@ -99,14 +95,24 @@ public class ListToTreeCombiner {
     ast.addFollowing(following);
   }
 
-  private LinkedList<HiddenTokenAwareTree> getChildren(HiddenTokenAwareTree ast) {
+  /**
+   * Children sorted by position. Parser creates them in order almost always, so they are 
+   * copied and sorted only if needed.
+   */
+  private List<HiddenTokenAwareTree> getChildren(HiddenTokenAwareTree ast) {
     List<HiddenTokenAwareTree> children = ast.getChildren();
     if (children == null)
-      return new LinkedList<HiddenTokenAwareTree>();
-
-    LinkedList<HiddenTokenAwareTree> copy = new LinkedList<HiddenTokenAwareTree>(children);
-    Collections.sort(copy, new PositionComparator());
-    return copy;
+      return Collections.emptyList();
+
+    PositionComparator comparator = new PositionComparator();
+    for (int i = 1; i < children.size(); i++) {
+      if (comparator.compare(children.get(i - 1), children.get(i)) > 0) {
+        List<HiddenTokenAwareTree> copy = new ArrayList<HiddenTokenAwareTree>(children);
+        Collections.sort(copy, comparator);
+        return copy;
+      }
+    }
+    return children;
   }
 
   private void addAllPrecedingTokens(HiddenTokenAwareTree target) {
@@ -115,37 +121,34 @@ public class ListToTreeCombiner {
     target.addPreceding(tokens);
   }
 
-  private LinkedList<CommonToken> readTillNewLine(int end) {
-    LinkedList<CommonToken> result = new LinkedList<CommonToken>();
-    if (hiddenTokens.isEmpty())
-      return result;
-
-    CommonToken first = hiddenTokens.peekFirst();
-    while (first != null && first.getTokenIndex() < end && first.getType() == LessLexer.COMMENT) {
-      result.add(first);
-      hiddenTokens.removeFirst();
-      first = hiddenTokens.peekFirst();
+  /**
+   * Reads comments before the end and the first token after them, unless it is behind the end. 
+   * The first token is not consumed.
+   */
+  private List<CommonToken> readTillNewLine(int end) {
+    int start = cursor;
+    while (cursor < hiddenTokens.size() && hiddenTokens.get(cursor).getTokenIndex() < end && hiddenTokens.get(cursor).getType() == LessLexer.COMMENT) {
+      cursor++;
     }
 
-    if (first == null || first.getTokenIndex() >= end)
-      return result;
+    if (cursor < hiddenTokens.size() && hiddenTokens.get(cursor).getTokenIndex() < end)
+      return hiddenTokens.subList(start, cursor + 1);
 
-    result.add(first);
-    return result;
+    return range(start, cursor);
   }
 
   private List<CommonToken> readPrefix(int end) {
-    List<CommonToken> result = new ArrayList<CommonToken>();
-    if (hiddenTokens.isEmpty())
-      return result;
-
-    CommonToken first = hiddenTokens.peekFirst();
-    while (first != null && first.getTokenIndex() < end) {
-      result.add(first);
-      hiddenTokens.removeFirst();
-      first = hiddenTokens.peekFirst();
+    int start = cursor;
+    while (cursor < hiddenTokens.size() && hiddenTokens.get(cursor).getTokenIndex() < end) {
+      cursor++;
     }
-    return result;
+    return range(start, cursor);
+  }
+
+  private List<CommonToken> range(int start, int end) {
+    if (start == end)
+      return Collections.emptyList();
+    return hiddenTokens.subList(start, end);
   }
 
   class PositionComparator implements Comparator<CommonTree> {
@@ -0,0 +1,107 @@
+package com.github.sommeri.less4j.core.parser;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.github.sommeri.less4j.core.ast.ASTCssNode;
+
+/**
+ * Replaces parse trees under abstract syntax tree by {@link SourcePositionTree}s.
+ *
+ * Some nodes are not returned by {@link ASTCssNode#getChilds()} (e.g. guards or parts of mixin
+ * names), so the tree is walked through fields of nodes the same way as serialization walks
+ * it. Nodes that shared the same parse tree share the same position afterwards.
+ */
+class ParseTreeDetacher {
+
+  private static final ConcurrentMap<Class<?>, List<Field>> fieldsCache = new ConcurrentHashMap<Class<?>, List<Field>>();
+
+  private final IdentityHashMap<HiddenTokenAwareTree, HiddenTokenAwareTree> positions = new IdentityHashMap<HiddenTokenAwareTree, HiddenTokenAwareTree>();
+  private final IdentityHashMap<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+  private final List<ASTCssNode> stack = new ArrayList<ASTCssNode>();
+
+  public void detach(ASTCssNode root) {
+    addReferenced(root);
+    while (!stack.isEmpty()) {
+      ASTCssNode node = stack.remove(stack.size() - 1);
+      node.setUnderlyingStructure(toPosition(node.getUnderlyingStructure()));
+      for (Field field : nodeFields(node.getClass())) {
+        addReferenced(read(field, node));
+      }
+    }
+  }
+
+  private void addReferenced(Object value) {
+    if (value == null || visited.put(value, Boolean.TRUE) != null)
+      return;
+
+    if (value instanceof ASTCssNode) {
+      stack.add((ASTCssNode) value);
+    } else if (value instanceof Collection) {
+      for (Object element : (Collection<?>) value) {
+        addReferenced(element);
+      }
+    } else if (value instanceof Map) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        addReferenced(entry.getKey());
+        addReferenced(entry.getValue());
+      }
+    } else if (value instanceof Object[]) {
+      for (Object element : (Object[]) value) {
+        addReferenced(element);
+      }
+    }
+  }
+
+  private HiddenTokenAwareTree toPosition(HiddenTokenAwareTree tree) {
+    if (tree == null || tree instanceof SourcePositionTree)
+      return tree;
+
+    HiddenTokenAwareTree result = positions.get(tree);
+    if (result == null) {
+      result = new SourcePositionTree(tree);
+      positions.put(tree, result);
+    }
+    return result;
+  }
+
+  private Object read(Field field, ASTCssNode node) {
+    try {
+      return field.get(node);
+    } catch (IllegalAccessException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * Fields that may reference other nodes. Underlying structure is replaced through its setter,
+   * parse trees are not walked.
+   */
+  private static List<Field> nodeFields(Class<?> type) {
+    List<Field> result = fieldsCache.get(type);
+    if (result != null)
+      return result;
+
+    result = new ArrayList<Field>();
+    for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+      for (Field field : current.getDeclaredFields()) {
+        Class<?> fieldType = field.getType();
+        if (Modifier.isStatic(field.getModifiers()) || fieldType.isPrimitive() || fieldType == String.class || HiddenTokenAwareTree.class.isAssignableFrom(fieldType))
+          continue;
+
+        field.setAccessible(true);
+        result.add(field);
+      }
+    }
+    fieldsCache.putIfAbsent(type, result);
+    return result;
+  }
+
+}
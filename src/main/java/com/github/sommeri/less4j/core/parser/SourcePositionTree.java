@@ -0,0 +1,41 @@
+package com.github.sommeri.less4j.core.parser;
+
+import com.github.sommeri.less4j.LessSource;
+
+/**
+ * Replaces parse tree under finished abstract syntax tree node, see
+ * {@link ASTBuilder#setDetachParseTrees(boolean)}. It remembers only source and position of the
+ * original tree, so it does not keep tokens, hidden tokens, children nor the rest of the parse
+ * tree in memory. Position getters return the same values as the original tree did.
+ */
+public class SourcePositionTree extends HiddenTokenAwareTree {
+
+  private final int line;
+  private final int charPositionInLine;
+
+  public SourcePositionTree(HiddenTokenAwareTree original) {
+    this(original.getSource(), original.getLine(), original.getCharPositionInLine());
+  }
+
+  public SourcePositionTree(LessSource source, int line, int charPositionInLine) {
+    super(source);
+    this.line = line;
+    this.charPositionInLine = charPositionInLine;
+  }
+
+  @Override
+  public int getLine() {
+    return line;
+  }
+
+  @Override
+  public int getColumn() {
+    return charPositionInLine;
+  }
+
+  @Override
+  public int getCharPositionInLine() {
+    return charPositionInLine;
+  }
+
+}
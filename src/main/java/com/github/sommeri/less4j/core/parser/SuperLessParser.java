@@ -191,6 +191,17 @@ public abstract class SuperLessParser extends Parser {
   }
 
   public abstract TreeAdaptor getTreeAdaptor();
+
+  public abstract void setTreeAdaptor(TreeAdaptor adaptor);
+
+  /**
+   * Prepares the parser for new input, so it can be reused.
+   */
+  public void reset(TokenStream input, List<Problem> errors) {
+    this.errors = errors;
+    paraphrases.clear();
+    setTokenStream(input);
+  }
   
   private void generateTokenErrorNames() {
     tokenErrorNames = getTokenNames().clone();
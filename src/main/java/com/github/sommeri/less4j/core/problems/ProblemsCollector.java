@@ -15,6 +15,10 @@ public class ProblemsCollector {
     this.errors.addAll(errors);
   }
 
+  public void addWarnings(Collection<Problem> warnings) {
+    this.warnings.addAll(warnings);
+  }
+
   public void addError(CompilationError error) {
     errors.add(error);
   }
@@ -318,6 +318,10 @@ public class ProblemsHandler implements LessProblems {
     collector.addErrors(errors);
   }
 
+  public void addWarnings(List<Problem> warnings) {
+    collector.addWarnings(warnings);
+  }
+
   @Override
   public void addError(ASTCssNode errorNode, String description) {
     collector.addError(new CompilationError(errorNode, description));
@@ -241,7 +241,7 @@ public class ArraysUtils {
     return true;
   }
 
-  public static <Q> void replace(List<Q> inList, Q oldElement, LinkedList<Q> newElements) {
+  public static <Q> void replace(List<Q> inList, Q oldElement, List<Q> newElements) {
     int level = inList.indexOf(oldElement);
     inList.remove(level);
     inList.addAll(level, newElements);
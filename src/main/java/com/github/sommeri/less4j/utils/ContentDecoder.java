@@ -0,0 +1,128 @@
+package com.github.sommeri.less4j.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Reads sheet content, decodes it and converts windows line endings into <code>\n</code> in
+ * a single pass. Characters are written directly into the result buffer, there are no
+ * intermediate copies of the whole content.
+ *
+ * Files are read through a small buffer and closed before the method returns. They are not
+ * memory mapped, mapping would stay until the garbage collector frees it and some systems do
+ * not allow to replace mapped file, e.g., when an editor saves a watched sheet.
+ *
+ * Malformed input is replaced the same way as {@link java.io.InputStreamReader} does.
+ */
+public class ContentDecoder {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  public static String read(File file, Charset charset) throws IOException {
+    FileInputStream input = new FileInputStream(file);
+    try {
+      FileChannel channel = input.getChannel();
+      return decode(channel, charset, (int) Math.min(channel.size(), Integer.MAX_VALUE));
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Reads the whole stream, the stream is not closed.
+   *
+   * @param expectedSize expected number of bytes or negative number if unknown
+   */
+  public static String read(InputStream input, Charset charset, int expectedSize) throws IOException {
+    return decode(Channels.newChannel(input), charset, expectedSize);
+  }
+
+  private static String decode(ReadableByteChannel channel, Charset charset, int expectedSize) throws IOException {
+    NormalizingOutput output = new NormalizingOutput(charset, Math.max(expectedSize, 0));
+    ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    while (channel.read(bytes) != -1) {
+      bytes.flip();
+      output.decode(bytes, false);
+      bytes.compact();
+    }
+    bytes.flip();
+    output.decode(bytes, true);
+    return output.finish();
+  }
+
+  private static class NormalizingOutput {
+
+    private final CharsetDecoder decoder;
+    private final CharBuffer chunk = CharBuffer.allocate(BUFFER_SIZE);
+    private char[] result;
+    private int length = 0;
+    private boolean pendingCarriageReturn = false;
+
+    public NormalizingOutput(Charset charset, int expectedBytes) {
+      decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+      result = new char[(int) Math.min(Integer.MAX_VALUE - 8, (long) (expectedBytes * (double) decoder.averageCharsPerByte()) + 16)];
+    }
+
+    public void decode(ByteBuffer bytes, boolean endOfInput) throws CharacterCodingException {
+      while (true) {
+        CoderResult coderResult = decoder.decode(bytes, chunk, endOfInput);
+        if (coderResult.isError())
+          coderResult.throwException();
+        copyChunk();
+        if (coderResult.isUnderflow())
+          break;
+      }
+      if (endOfInput) {
+        while (decoder.flush(chunk).isOverflow()) {
+          copyChunk();
+        }
+        copyChunk();
+      }
+    }
+
+    public String finish() {
+      if (pendingCarriageReturn)
+        append('\r');
+      return new String(result, 0, length);
+    }
+
+    private void copyChunk() {
+      chunk.flip();
+      ensureCapacity(length + chunk.remaining() + 1);
+      while (chunk.hasRemaining()) {
+        char c = chunk.get();
+        if (pendingCarriageReturn && c != '\n')
+          result[length++] = '\r';
+        pendingCarriageReturn = c == '\r';
+        if (!pendingCarriageReturn)
+          result[length++] = c;
+      }
+      chunk.clear();
+    }
+
+    private void append(char c) {
+      ensureCapacity(length + 1);
+      result[length++] = c;
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > result.length)
+        result = Arrays.copyOf(result, Math.max(capacity, result.length + (result.length >> 1)));
+    }
+
+  }
+
+}
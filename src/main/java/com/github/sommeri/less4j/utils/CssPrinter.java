@@ -921,12 +921,12 @@ public class CssPrinter {
       cssOnly.append(node.getOriginalString());
     } else {
       if (node.hasExpliciteSign()) {
-        if (0 < node.getValueAsDouble())
+        if (0 < node.getValue())
           cssOnly.append('+');
         else
           cssOnly.append('-');
       }
-      cssOnly.append(PrintUtils.formatNumber(node.getValueAsDouble()) + node.getSuffix());
+      cssOnly.append(PrintUtils.formatNumber(node.getValue()) + node.getSuffix());
     }
 
     return true;
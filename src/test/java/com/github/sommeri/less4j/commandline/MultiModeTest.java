@@ -1,7 +1,13 @@
 package com.github.sommeri.less4j.commandline;
 
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.github.sommeri.less4j.utils.DeleteFilesRule;
 
@@ -10,6 +16,9 @@ public class MultiModeTest extends CommandLineTest {
   @Rule
   public DeleteFilesRule cleaner = new DeleteFilesRule();
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Test
   public void noInputFile() {
     CommandLine.main(new String[] {"-m"});
@@ -52,6 +61,50 @@ public class MultiModeTest extends CommandLineTest {
     assertError(FILE_DOES_NOT_EXISTS);
   }
 
+  @Test
+  public void multipleThreads() {
+    String multiLessFile1 = inputDir+"multi1.less";
+    String multiCssFile1 = inputDir+"multi1.css";
+    String multiLessFile2 = inputDir+"multi2.less";
+    String multiCssFile2 = inputDir+"multi2.css";
+    String multiLessFile3 = inputDir+"multi3.less";
+    String multiCssFile3 = inputDir+"multi3.css";
+    String wrongFile = inputDir+"doesNotExists.less";
+
+    cleaner.ensureRemoval(multiCssFile1, multiCssFile2, multiCssFile3);
+    CommandLine.main(new String[] {"-m", "-t", "4", multiLessFile1, wrongFile, multiLessFile2, wrongFile, multiLessFile3});
+    fileUtils.assertFileContent(multiCssFile1, correctCss("multi1"));
+    fileUtils.assertFileContent(multiCssFile2, correctCss("multi2"));
+    fileUtils.assertFileContent(multiCssFile3, correctCss("multi3"));
+    // errors are printed in the order of input files
+    assertError(FILE_DOES_NOT_EXISTS + FILE_DOES_NOT_EXISTS);
+  }
+
+  @Test
+  public void cacheDirectory() throws IOException {
+    String multiLessFile1 = inputDir+"multi1.less";
+    String multiCssFile1 = inputDir+"multi1.css";
+    String multiLessFile2 = inputDir+"multi2.less";
+    String multiCssFile2 = inputDir+"multi2.css";
+    File cacheDirectory = folder.newFolder("cache");
+
+    cleaner.ensureRemoval(multiCssFile1, multiCssFile2);
+    CommandLine.main(new String[] {"-m", "-cd", cacheDirectory.getPath(), multiLessFile1, multiLessFile2});
+    assertEquals(2, cacheDirectory.list().length);
+
+    // second run reads parsed files from the cache
+    CommandLine.main(new String[] {"-m", "-cd", cacheDirectory.getPath(), multiLessFile1, multiLessFile2});
+    fileUtils.assertFileContent(multiCssFile1, correctCss("multi1"));
+    fileUtils.assertFileContent(multiCssFile2, correctCss("multi2"));
+    assertNoErrors();
+  }
+
+  @Test
+  public void wrongNumberOfThreads() {
+    CommandLine.main(new String[] {"-m", "-t", "0", inputDir+"multi1.less"});
+    assertError("Number of threads must be positive.\n");
+  }
+
   @Test
   public void sourceMap() {
     String multiLessFile1 = inputDir+"multi1.less";
@@ -0,0 +1,66 @@
+package com.github.sommeri.less4j.commandline;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.sommeri.less4j.utils.TemporaryFiles;
+
+public class WatchModeTest extends CommandLineTest {
+
+  private static final long TIMEOUT = 10000;
+
+  @Rule
+  public TemporaryFiles folder = new TemporaryFiles();
+
+  @Test
+  public void recompilesAffectedFiles() throws Exception {
+    File imported = folder.write("imported.less", "@color: red;");
+    File first = folder.write("first.less", "@import \"imported.less\";\n.first { color: @color; }");
+    File second = folder.write("second.less", ".second { color: black; }");
+    File output = folder.newFolder("output");
+    final String[] args = new String[] { "-m", "-w", "-o", output.getPath(), first.getPath(), second.getPath() };
+
+    Thread watching = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        CommandLine.main(args);
+      }
+    });
+    watching.start();
+    try {
+      File firstCss = new File(output, "first.css");
+      File secondCss = new File(output, "second.css");
+      waitForContent(firstCss, "red");
+      waitForContent(secondCss, "black");
+      long secondModified = secondCss.lastModified();
+
+      folder.write("imported.less", "@color: blue;");
+      imported.setLastModified(imported.lastModified() + 10000);
+      waitForContent(firstCss, "blue");
+      assertTrue(secondCss.lastModified() == secondModified);
+    } finally {
+      watching.interrupt();
+      watching.join(TIMEOUT);
+    }
+    assertNoErrors();
+  }
+
+  private void waitForContent(File file, String expected) throws InterruptedException, IOException {
+    long end = System.currentTimeMillis() + TIMEOUT;
+    while (System.currentTimeMillis() < end) {
+      if (file.exists() && FileUtils.readFileToString(file).contains(expected))
+        return;
+      Thread.sleep(50);
+    }
+    fail("File " + file + " does not contain " + expected);
+  }
+
+
+}
@@ -0,0 +1,156 @@
+package com.github.sommeri.less4j.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.LessSource.StringSource;
+import com.github.sommeri.less4j.core.AstSerializer;
+import com.github.sommeri.less4j.core.AstSerializer.IncompatibleFormatException;
+import com.github.sommeri.less4j.core.AstSerializer.SourceResolver;
+import com.github.sommeri.less4j.core.ast.ASTCssNode;
+import com.github.sommeri.less4j.core.ast.RuleSet;
+import com.github.sommeri.less4j.core.ast.StyleSheet;
+import com.github.sommeri.less4j.core.parser.ANTLRParser;
+import com.github.sommeri.less4j.core.parser.ASTBuilder;
+import com.github.sommeri.less4j.core.problems.ProblemsHandler;
+
+public class AstSerializerTest {
+
+  private AstSerializer serializer = new AstSerializer();
+
+  @Test
+  public void keepsPositionsAndComments() throws Exception {
+    StringSource source = new StringSource("// leading\n.a {\n  color: red; /* trailing */\n}\n", "sheet.less");
+    StyleSheet sheet = parse(source);
+
+    StyleSheet copy = (StyleSheet) serializer.read(serializer.write(sheet), AstSerializer.singleSource(source));
+    assertNotSame(sheet, copy);
+    assertSame(source, copy.getSource());
+
+    RuleSet original = (RuleSet) sheet.getChilds().get(0);
+    RuleSet read = (RuleSet) copy.getChilds().get(0);
+    assertSame(copy, read.getParent());
+    assertEquals(original.getSourceLine(), read.getSourceLine());
+    assertEquals(original.getSourceColumn(), read.getSourceColumn());
+    assertEquals(original.getOpeningComments().size(), read.getOpeningComments().size());
+    assertEquals(original.getBody().getDeclarations().get(0).getTrailingComments().get(0).getComment(), read.getBody().getDeclarations().get(0).getTrailingComments().get(0).getComment());
+    assertEquals(original.getUnderlyingStructure().getText(), read.getUnderlyingStructure().getText());
+  }
+
+  @Test
+  public void resolvesSourcesByNameAndUri() throws Exception {
+    URI uri = URI.create("http://example.com/sheet.less");
+    StringSource source = new StringSource(".a { color: red; }", "sheet.less", uri);
+    final List<String> resolved = new ArrayList<String>();
+    final StringSource replacement = new StringSource(".a { color: red; }");
+
+    ASTCssNode copy = serializer.read(serializer.write(parse(source)), new SourceResolver() {
+
+      @Override
+      public LessSource resolve(String name, URI uri) {
+        resolved.add(name + " " + uri);
+        return replacement;
+      }
+    });
+    assertEquals(1, resolved.size());
+    assertEquals("sheet.less http://example.com/sheet.less", resolved.get(0));
+    assertSame(replacement, copy.getSource());
+  }
+
+  @Test
+  public void rejectsOtherData() throws Exception {
+    StringSource source = new StringSource(".a { color: red; }");
+    byte[] data = serializer.write(parse(source));
+    data[7]++; // format version
+    try {
+      serializer.read(data, AstSerializer.singleSource(source));
+      fail("Data written by other format version should not be read.");
+    } catch (IncompatibleFormatException ex) {
+    }
+    try {
+      serializer.read(".a { color: red; }".getBytes("utf-8"), AstSerializer.singleSource(source));
+      fail("Data that are not tree should not be read.");
+    } catch (IncompatibleFormatException ex) {
+    }
+  }
+
+  @Test
+  public void rejectsOtherClasses() throws Exception {
+    StringSource source = new StringSource(".a { color: red; }");
+    String data = new String(serializer.write(parse(source)), "iso-8859-1");
+    // class name of the same length keeps the data well formed
+    byte[] forged = data.replace("java.util.ArrayList", "java.util.Hashtable").getBytes("iso-8859-1");
+    try {
+      serializer.read(forged, AstSerializer.singleSource(source));
+      fail("Classes that are not part of tree should not be read.");
+    } catch (InvalidClassException ex) {
+      assertEquals("java.util.Hashtable", ex.classname);
+    }
+  }
+
+  @Test
+  public void rejectsChangedClasses() throws Exception {
+    StringSource source = new StringSource(".a { color: red; }");
+    byte[] data = serializer.write(parse(source));
+    // layout hash follows the class name
+    data[new String(data, "iso-8859-1").indexOf("java.util.ArrayList") + "java.util.ArrayList".length()]++;
+    try {
+      serializer.read(data, AstSerializer.singleSource(source));
+      fail("Classes with different fields should not be read.");
+    } catch (IncompatibleFormatException ex) {
+    }
+  }
+
+  @Test
+  public void rejectsDamagedData() throws Exception {
+    StringSource source = new StringSource("// comment\n.a { color: red; .mixin(1px, @b); }\n.mixin(@a, @b) { width: @a; }");
+    byte[] data = serializer.write(parse(source));
+    for (int i = 0; i < data.length; i += 2) {
+      byte[] damaged = data.clone();
+      damaged[i] ^= 0x80;
+      try {
+        serializer.read(damaged, AstSerializer.singleSource(source));
+      } catch (IOException ex) {
+        // damaged data are either rejected or read as a different tree
+      }
+    }
+  }
+
+  @Test
+  public void varints() throws Exception {
+    int[] values = new int[] { 0, 1, -1, 63, 64, -64, -65, 127, 128, 300, Integer.MAX_VALUE, Integer.MIN_VALUE };
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(bytes);
+    for (int value : values) {
+      AstSerializer.writeVarint(output, value);
+    }
+    // small numbers take one byte
+    assertEquals(1 + 1 + 1 + 1 + 2 + 1 + 2 + 2 + 2 + 2 + 5 + 5, bytes.size());
+
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    for (int value : values) {
+      assertEquals(value, AstSerializer.readVarint(input));
+    }
+  }
+
+  private StyleSheet parse(LessSource source) throws Exception {
+    ANTLRParser.ParseResult result = new ANTLRParser().parseStyleSheet(source.getContent(), source);
+    return new ASTBuilder(new ProblemsHandler()).parseStyleSheet(result.getTree());
+  }
+
+}
@@ -0,0 +1,145 @@
+package com.github.sommeri.less4j.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.sommeri.less4j.LessCompiler;
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.LessSource.FileSource;
+import com.github.sommeri.less4j.LessSource.StringSource;
+import com.github.sommeri.less4j.core.BoundedAstCache;
+import com.github.sommeri.less4j.core.BoundedAstCache.Invalidation;
+import com.github.sommeri.less4j.core.DefaultLessCompiler;
+import com.github.sommeri.less4j.utils.CountingFileSource;
+import com.github.sommeri.less4j.utils.TemporaryFiles;
+
+public class BoundedAstCacheTest {
+
+  @Rule
+  public TemporaryFiles folder = new TemporaryFiles();
+
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    BoundedAstCache cache = new BoundedAstCache(2, Long.MAX_VALUE, Invalidation.NONE);
+    LessSource first = new StringSource("first");
+    LessSource second = new StringSource("second");
+    LessSource third = new StringSource("third");
+
+    cache.setAst(first, "1");
+    cache.setAst(second, "2");
+    cache.getAst(first);
+    cache.setAst(third, "3");
+
+    assertEquals(2, cache.size());
+    assertEquals("1", cache.getAst(first));
+    assertNull(cache.getAst(second));
+    assertEquals("3", cache.getAst(third));
+  }
+
+  @Test
+  public void evictsOverWeight() {
+    BoundedAstCache cache = new BoundedAstCache(10, 2, Invalidation.NONE);
+    cache.setAst(new StringSource("first"), "1");
+    cache.setAst(new StringSource("second"), "2");
+    cache.setAst(new StringSource("third"), "3");
+
+    assertEquals(2, cache.size());
+    assertEquals(2, cache.getWeight());
+  }
+
+  @Test
+  public void dropsModifiedFile() throws Exception {
+    FileSource source = new FileSource(folder.write("sheet.less", "a { b: c; }"));
+    source.getContent();
+
+    BoundedAstCache cache = new BoundedAstCache();
+    cache.setAst(source, "ast");
+    assertEquals("ast", cache.getAst(new FileSource(source.getInputFile())));
+
+    source.getInputFile().setLastModified(source.getLastModified() + 10000);
+    assertNull(cache.getAst(source));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void dropsChangedContent() throws Exception {
+    FileSource source = new FileSource(folder.write("sheet.less", "a { b: c; }"));
+    source.getContent();
+
+    BoundedAstCache byLastModified = new BoundedAstCache(10, Long.MAX_VALUE, Invalidation.LAST_MODIFIED);
+    BoundedAstCache byContent = new BoundedAstCache(10, Long.MAX_VALUE, Invalidation.CONTENT_HASH);
+    byLastModified.setAst(source, "ast");
+    byContent.setAst(source, "ast");
+
+    // same last modified time, different content
+    long lastModified = source.getLastModified();
+    folder.write("sheet.less", "a { b: d; }");
+    source.getInputFile().setLastModified(lastModified);
+
+    assertEquals("ast", byLastModified.getAst(source));
+    assertNull(byContent.getAst(source));
+  }
+
+  @Test
+  public void compilationSeesChangedImport() throws Exception {
+    File main = folder.write("main.less", "@import \"imported.less\";\n.main { .mixin(); }");
+    File imported = folder.write("imported.less", ".mixin() { color: red; }");
+
+    BoundedAstCache cache = new BoundedAstCache();
+    LessCompiler compiler = new DefaultLessCompiler();
+    Configuration configuration = new Configuration().setCache(cache);
+
+    assertTrue(compiler.compile(main, configuration).getCss().contains("red"));
+    assertEquals(2, cache.size());
+    assertTrue(cache.getWeight() > cache.size());
+
+    long lastModified = imported.lastModified();
+    folder.write("imported.less", ".mixin() { color: blue; }");
+    imported.setLastModified(lastModified + 10000);
+
+    assertTrue(compiler.compile(main, configuration).getCss().contains("blue"));
+  }
+
+  @Test
+  public void cachedImportIsNotRead() throws Exception {
+    File main = folder.write("main.less", "@import \"imported.less\";\n.main { .mixin(); }");
+    File imported = folder.write("imported.less", ".mixin() { color: red; }");
+    imported.setLastModified(main.lastModified() + 10000);
+
+    LessCompiler compiler = new DefaultLessCompiler();
+    Configuration configuration = new Configuration().setCache(new BoundedAstCache());
+    CountingFileSource first = new CountingFileSource(main);
+    compiler.compile(first, configuration);
+    assertEquals(Arrays.asList("main.less", "imported.less"), first.getRead());
+
+    CountingFileSource second = new CountingFileSource(main);
+    assertTrue(compiler.compile(second, configuration).getCss().contains("red"));
+    assertEquals(Collections.emptyList(), second.getRead());
+    assertTrue(second.getLatestModified() >= imported.lastModified());
+  }
+
+  @Test
+  public void cachedCommentsStayUnchanged() throws Exception {
+    // mixin call moves its comments into cloned mixin body, cached tree must not see them
+    File main = folder.write("main.less", ".mixin() {\n  /* inside */\n  color: red;\n}\n.main {\n  /* before */ .mixin(); /* after */\n}");
+
+    LessCompiler compiler = new DefaultLessCompiler();
+    Configuration configuration = new Configuration().setCache(new BoundedAstCache());
+    String first = compiler.compile(main, configuration).getCss();
+    String second = compiler.compile(main, configuration).getCss();
+
+    assertEquals(compiler.compile(main).getCss(), first);
+    assertEquals(first, second);
+  }
+
+
+}
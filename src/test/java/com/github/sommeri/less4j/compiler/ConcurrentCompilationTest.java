@@ -0,0 +1,141 @@
+package com.github.sommeri.less4j.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.github.sommeri.less4j.Less4jException;
+import com.github.sommeri.less4j.LessCompiler;
+import com.github.sommeri.less4j.LessCompiler.CompilationResult;
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.core.DefaultLessCompiler;
+import com.github.sommeri.less4j.core.ParallelLessCompiler;
+import com.github.sommeri.less4j.core.ThreadUnsafeLessCompiler;
+
+/**
+ * Compiles less.js test cases on multiple threads at the same time using shared
+ * compilers and compares results with sequential compilation.
+ */
+public class ConcurrentCompilationTest {
+
+  private static final String inputLessDir = "src/test/resources/less.js-v1.3.3/less/";
+  private static final int THREADS = 8;
+  private static final int ROUNDS = 4;
+
+  @Test
+  public void sharedDefaultCompiler() throws Exception {
+    List<File> files = allFiles();
+    List<String> expected = compileSequentially(files);
+
+    final LessCompiler shared = new DefaultLessCompiler();
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<String>> results = new ArrayList<Future<String>>();
+      for (int round = 0; round < ROUNDS; round++) {
+        for (final File file : files) {
+          results.add(executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+              return compile(shared, file);
+            }
+          }));
+        }
+      }
+
+      for (int i = 0; i < results.size(); i++) {
+        int fileIndex = i % files.size();
+        assertEquals(files.get(fileIndex).getName(), expected.get(fileIndex), results.get(i).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void parallelCompiler() throws Exception {
+    List<File> files = allFiles();
+    List<String> expected = compileSequentially(files);
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      ParallelLessCompiler compiler = new ParallelLessCompiler(executor);
+      for (int round = 0; round < ROUNDS; round++) {
+        List<LessSource> sources = new ArrayList<LessSource>();
+        for (File file : files) {
+          sources.add(new LessSource.FileSource(file));
+        }
+
+        List<Future<CompilationResult>> results = compiler.compile(sources);
+        for (int i = 0; i < results.size(); i++) {
+          assertEquals(files.get(i).getName(), expected.get(i), toCssOrErrors(results.get(i)));
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void parallelCompilerKeepsCallerConfiguration() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      ParallelLessCompiler compiler = new ParallelLessCompiler(executor);
+      Configuration configuration = new Configuration();
+      compiler.compile(new LessSource.StringSource("a { b: c; }"), configuration).get();
+      assertNull(configuration.getCache());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private List<File> allFiles() {
+    return new ArrayList<File>(FileUtils.listFiles(new File(inputLessDir), new String[] { "less" }, false));
+  }
+
+  private List<String> compileSequentially(List<File> files) {
+    List<String> expected = new ArrayList<String>();
+    for (File file : files) {
+      expected.add(compile(new ThreadUnsafeLessCompiler(), file));
+    }
+    return expected;
+  }
+
+  private String toCssOrErrors(Future<CompilationResult> future) throws InterruptedException {
+    try {
+      return future.get().getCss();
+    } catch (ExecutionException ex) {
+      return errors(((Less4jException) ex.getCause()).getErrors());
+    }
+  }
+
+  private String compile(LessCompiler compiler, File file) {
+    try {
+      CompilationResult result = compiler.compile(file, new Configuration());
+      return result.getCss();
+    } catch (Less4jException ex) {
+      return errors(ex.getErrors());
+    }
+  }
+
+  private String errors(Collection<LessCompiler.Problem> errors) {
+    StringBuilder result = new StringBuilder();
+    for (LessCompiler.Problem problem : errors) {
+      result.append(problem.getLine()).append(":").append(problem.getCharacter()).append(" ").append(problem.getMessage()).append("\n");
+    }
+    return result.toString();
+  }
+
+}
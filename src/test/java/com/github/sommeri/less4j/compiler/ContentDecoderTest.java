@@ -0,0 +1,70 @@
+package com.github.sommeri.less4j.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.sommeri.less4j.LessSource.FileSource;
+import com.github.sommeri.less4j.utils.ContentDecoder;
+
+public class ContentDecoderTest {
+
+  private static final Charset UTF_8 = Charset.forName("utf-8");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void normalizesLineEndings() throws Exception {
+    assertEquals("a\nb\r\nc\rd\n\r", decode("a\r\nb\r\r\nc\rd\n\r"));
+  }
+
+  @Test
+  public void lineEndingSplitBetweenBuffers() throws Exception {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 3000; i++) {
+      // multibyte characters and line endings end up on buffer boundaries
+      content.append("\u010d\u20ac\r\n");
+    }
+    assertEquals(content.toString().replace("\r\n", "\n"), decode(content.toString()));
+  }
+
+  @Test
+  public void largeFile() throws Exception {
+    StringBuilder content = new StringBuilder();
+    while (content.length() < 1024 * 1024) {
+      content.append(".a { content: \"\u010d\"; }\r\n");
+    }
+    File file = folder.newFile("large.less");
+    FileUtils.writeStringToFile(file, content.toString(), "utf-8");
+
+    String expected = content.toString().replace("\r\n", "\n");
+    assertEquals(expected, ContentDecoder.read(file, UTF_8));
+    assertEquals(expected, new FileSource(file).getContent());
+    // read file can be replaced right away
+    assertTrue(file.delete());
+  }
+
+  @Test
+  public void otherCharsets() throws Exception {
+    String content = "a\r\n\u010d\u00e9";
+    for (String charset : new String[] { "utf-16", "iso-8859-2", "windows-1250" }) {
+      byte[] bytes = content.getBytes(charset);
+      assertEquals(charset, "a\n\u010d\u00e9", ContentDecoder.read(new ByteArrayInputStream(bytes), Charset.forName(charset), bytes.length));
+    }
+  }
+
+  private String decode(String content) throws Exception {
+    byte[] bytes = content.getBytes(UTF_8.name());
+    return ContentDecoder.read(new ByteArrayInputStream(bytes), UTF_8, -1);
+  }
+
+}
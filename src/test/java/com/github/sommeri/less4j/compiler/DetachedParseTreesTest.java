@@ -0,0 +1,126 @@
+package com.github.sommeri.less4j.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.github.sommeri.less4j.Less4jException;
+import com.github.sommeri.less4j.LessCompiler;
+import com.github.sommeri.less4j.LessCompiler.CompilationResult;
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessCompiler.Problem;
+import com.github.sommeri.less4j.LessSource.StringSource;
+import com.github.sommeri.less4j.core.BoundedAstCache;
+import com.github.sommeri.less4j.core.DefaultLessCompiler;
+import com.github.sommeri.less4j.core.ast.ASTCssNode;
+import com.github.sommeri.less4j.core.ast.Guard;
+import com.github.sommeri.less4j.core.ast.ReusableStructure;
+import com.github.sommeri.less4j.core.ast.RuleSet;
+import com.github.sommeri.less4j.core.ast.StyleSheet;
+import com.github.sommeri.less4j.core.parser.ANTLRParser;
+import com.github.sommeri.less4j.core.parser.ASTBuilder;
+import com.github.sommeri.less4j.core.parser.SourcePositionTree;
+import com.github.sommeri.less4j.core.problems.ProblemsHandler;
+
+public class DetachedParseTreesTest {
+
+  private static final String importsDir = "src/test/resources/compile-basic-features/import/";
+  private static final String mixinsDir = "src/test/resources/compile-basic-features/mixins/";
+  private static final String lessJsDir = "src/test/resources/less.js-v1.3.3/less/";
+  private static final String errorsDir = "src/test/resources/error-handling/";
+
+  private LessCompiler compiler = new DefaultLessCompiler();
+
+  @Test
+  public void compilesTheSame() throws Exception {
+    compareAll(importsDir);
+    compareAll(mixinsDir);
+    compareAll(lessJsDir);
+  }
+
+  @Test
+  public void reportsTheSameProblems() throws Exception {
+    compareAll(errorsDir);
+    compareAll(errorsDir + "functions/");
+    compareAll(errorsDir + "malformed-less/");
+    compareAll(errorsDir + "deprecated-warnings/");
+  }
+
+  @Test
+  public void keepsOnlyPositions() throws Exception {
+    StringSource source = new StringSource("/* comment */\n.mixin(@a) when (@a > 1) {\n  width: @a;\n}\n.b { .mixin(2); }\n", "sheet.less");
+    StyleSheet attached = parse(source, false);
+    StyleSheet detached = parse(source, true);
+
+    ReusableStructure mixin = (ReusableStructure) detached.getMembers().get(0);
+    assertDetached(mixin);
+    assertDetached(mixin.getOpeningComments().get(0));
+    assertDetached(mixin.getNames().get(0).getNameParts().get(0));
+    for (Guard guard : mixin.getGuards()) {
+      assertDetached(guard);
+      assertDetached(guard.getConditions().get(0));
+    }
+    assertDetached(((RuleSet) detached.getMembers().get(1)).getBody().getMembers().get(0));
+
+    ReusableStructure original = (ReusableStructure) attached.getMembers().get(0);
+    assertEquals(original.getSource(), mixin.getSource());
+    assertEquals(original.getSourceLine(), mixin.getSourceLine());
+    assertEquals(original.getSourceColumn(), mixin.getSourceColumn());
+    assertEquals(original.getGuards().get(0).getSourceColumn(), mixin.getGuards().get(0).getSourceColumn());
+  }
+
+  private void assertDetached(ASTCssNode node) {
+    assertTrue(node.toString(), node.getUnderlyingStructure() instanceof SourcePositionTree);
+  }
+
+  private StyleSheet parse(StringSource source, boolean detach) throws Exception {
+    ANTLRParser.ParseResult result = new ANTLRParser().parseStyleSheet(source.getContent(), source);
+    ASTBuilder builder = new ASTBuilder(new ProblemsHandler());
+    builder.setDetachParseTrees(detach);
+    return builder.parseStyleSheet(result.getTree());
+  }
+
+  private void compareAll(String directory) {
+    Collection<File> files = FileUtils.listFiles(new File(directory), new String[] { "less" }, false);
+    for (File file : files) {
+      String expected = compile(file, false, null);
+      assertEquals(file.getName(), expected, compile(file, true, null));
+
+      // trees taken from cache, problems found while building the tree are not reported again
+      String expectedCached = compileTwice(file, false);
+      assertEquals(file.getName(), expectedCached, compileTwice(file, true));
+    }
+  }
+
+  private String compileTwice(File file, boolean detach) {
+    BoundedAstCache cache = new BoundedAstCache(100);
+    compile(file, detach, cache);
+    return compile(file, detach, cache);
+  }
+
+  private String compile(File file, boolean detach, BoundedAstCache cache) {
+    Configuration configuration = new Configuration().setDetachParseTrees(detach).setCache(cache);
+    configuration.setCssResultLocation(new File(file.getPath() + ".css"));
+    try {
+      CompilationResult result = compiler.compile(file, configuration);
+      return result.getCss() + result.getSourceMap() + toString(result.getWarnings());
+    } catch (Less4jException ex) {
+      return "Errors " + toString(ex.getErrors()) + toString(ex.getPartialResult().getWarnings());
+    }
+  }
+
+  private String toString(List<Problem> problems) {
+    StringBuilder result = new StringBuilder();
+    for (Problem problem : problems) {
+      result.append(problem.getType()).append(" ").append(problem.getLine()).append(":").append(problem.getCharacter()).append(" ").append(problem.getMessage()).append("\n");
+    }
+    return result.toString();
+  }
+
+}
@@ -0,0 +1,129 @@
+package com.github.sommeri.less4j.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.sommeri.less4j.Less4jException;
+import com.github.sommeri.less4j.LessCompiler;
+import com.github.sommeri.less4j.LessCompiler.CompilationResult;
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessSource.FileSource;
+import com.github.sommeri.less4j.core.DefaultLessCompiler;
+import com.github.sommeri.less4j.core.DiskAstCache;
+import com.github.sommeri.less4j.utils.CountingFileSource;
+import com.github.sommeri.less4j.utils.TemporaryFiles;
+
+public class DiskAstCacheTest {
+
+  private static final String inputLessDir = "src/test/resources/less.js-v1.3.3/less/";
+
+  @Rule
+  public TemporaryFiles folder = new TemporaryFiles();
+
+  private LessCompiler compiler = new DefaultLessCompiler();
+
+  @Test
+  public void cachedTreesCompileTheSame() throws Exception {
+    File directory = folder.newFolder("cache");
+    Collection<File> files = FileUtils.listFiles(new File(inputLessDir), new String[] { "less" }, false);
+    for (File file : files) {
+      compile(file, new DiskAstCache(directory));
+    }
+
+    // new instance behaves as a cache in a new process
+    DiskAstCache cache = new DiskAstCache(directory);
+    for (File file : files) {
+      String expected = compile(file, null);
+      if (!expected.startsWith("Errors"))
+        assertNotNull(file.getName(), cache.getAst(new FileSource(file)));
+      assertEquals(file.getName(), expected, compile(file, cache));
+    }
+  }
+
+  @Test
+  public void changedContentIsNotUsed() throws Exception {
+    File file = folder.write("sheet.less", ".a { color: red; }");
+    DiskAstCache cache = new DiskAstCache(folder.newFolder("cache"));
+    compile(file, cache);
+    assertNotNull(cache.getAst(new FileSource(file)));
+
+    folder.write("sheet.less", ".a { color: blue; }");
+    assertNull(cache.getAst(new FileSource(file)));
+    assertTrue(compile(file, cache).contains("blue"));
+  }
+
+  @Test
+  public void contentChangedAfterParsingIsNotUsed() throws Exception {
+    File file = folder.write("sheet.less", ".a { color: red; }");
+    DiskAstCache parsedCache = new DiskAstCache(folder.newFolder("parsed"));
+    compile(file, parsedCache);
+    Object ast = parsedCache.getAst(new FileSource(file));
+
+    FileSource source = new FileSource(file);
+    String parsed = source.getContent();
+    folder.write("sheet.less", ".a { color: blue; }");
+    file.setLastModified(file.lastModified() + 10000);
+
+    DiskAstCache cache = new DiskAstCache(folder.newFolder("cache"));
+    cache.setAst(source, parsed, ast);
+    assertNull(cache.getAst(new FileSource(file)));
+  }
+
+  @Test
+  public void damagedFilesAreIgnored() throws Exception {
+    File file = folder.write("sheet.less", "@color: red;\n.a { color: @color; }");
+    File directory = folder.newFolder("cache");
+    String expected = compile(file, new DiskAstCache(directory));
+    File cached = directory.listFiles()[0];
+    byte[] data = FileUtils.readFileToByteArray(cached);
+
+    // each header byte, sample of tree bytes
+    for (int i = 0; i < data.length; i += i < 64 ? 1 : 7) {
+      byte[] damaged = data.clone();
+      damaged[i] ^= 0x5a;
+      FileUtils.writeByteArrayToFile(cached, damaged);
+      assertEquals("byte " + i, expected, compile(file, new DiskAstCache(directory)));
+    }
+  }
+
+  @Test
+  public void unchangedFileIsNotRead() throws Exception {
+    File file = folder.write("sheet.less", ".a { color: red; }");
+    File directory = folder.newFolder("cache");
+    compile(file, new DiskAstCache(directory));
+
+    CountingFileSource source = new CountingFileSource(file);
+    assertNotNull(new DiskAstCache(directory).getAst(source));
+    assertEquals(Collections.emptyList(), source.getRead());
+
+    // touched file with the same content is read, but tree is still used
+    file.setLastModified(file.lastModified() + 10000);
+    assertNotNull(new DiskAstCache(directory).getAst(source));
+    assertEquals(Arrays.asList("sheet.less"), source.getRead());
+  }
+
+  private String compile(File file, DiskAstCache cache) throws IOException {
+    Configuration configuration = new Configuration().setCache(cache);
+    configuration.setCssResultLocation(new File(file.getPath() + ".css"));
+    try {
+      CompilationResult result = compiler.compile(file, configuration);
+      return result.getCss() + result.getSourceMap();
+    } catch (Less4jException ex) {
+      return "Errors " + ex.getErrors().size();
+    }
+  }
+
+
+}
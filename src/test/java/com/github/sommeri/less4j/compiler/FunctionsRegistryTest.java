@@ -0,0 +1,170 @@
+package com.github.sommeri.less4j.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.sommeri.less4j.LessCompiler;
+import com.github.sommeri.less4j.LessCompiler.CompilationResult;
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessCompiler.Problem;
+import com.github.sommeri.less4j.LessFunction;
+import com.github.sommeri.less4j.LessProblems;
+import com.github.sommeri.less4j.NamedLessFunction;
+import com.github.sommeri.less4j.PureLessFunction;
+import com.github.sommeri.less4j.core.DefaultLessCompiler;
+import com.github.sommeri.less4j.core.ast.Expression;
+import com.github.sommeri.less4j.core.ast.FunctionExpression;
+import com.github.sommeri.less4j.core.ast.IdentifierExpression;
+
+public class FunctionsRegistryTest {
+
+  private static final String LESS = "a { width: round(1.4px); height: unknown(1); }";
+
+  private LessCompiler compiler = new DefaultLessCompiler();
+
+  @Test
+  public void customFunctionsAddedLater() throws Exception {
+    Configuration configuration = new Configuration();
+    assertEquals("a {\n  width: 1px;\n  height: unknown(1);\n}\n", compiler.compile(LESS, configuration).getCss());
+
+    configuration.addCustomFunction(new ConstantFnc("unknown", "known"));
+    assertEquals("a {\n  width: 1px;\n  height: known;\n}\n", compiler.compile(LESS, configuration).getCss());
+
+    // custom functions win over built-in ones
+    configuration.addCustomFunction(new ConstantFnc("round", "custom"));
+    assertEquals("a {\n  width: custom;\n  height: known;\n}\n", compiler.compile(LESS, configuration).getCss());
+  }
+
+  @Test
+  public void namedFunctionsAskedOnlyAboutTheirNames() throws Exception {
+    Configuration configuration = new Configuration();
+    NamedConstantFnc named = new NamedConstantFnc("unknown", "named");
+    configuration.addCustomFunction(named);
+    assertEquals("a {\n  width: 1px;\n  height: named;\n}\n", compiler.compile(LESS, configuration).getCss());
+    assertEquals(1, named.asked);
+  }
+
+  @Test
+  public void registrationOrderWins() throws Exception {
+    Configuration configuration = new Configuration();
+    configuration.addCustomFunction(new ConstantFnc("unknown", "catch-all"));
+    configuration.addCustomFunction(new NamedConstantFnc("UNKNOWN", "named"));
+    assertEquals("a {\n  width: 1px;\n  height: catch-all;\n}\n", compiler.compile(LESS, configuration).getCss());
+
+    configuration = new Configuration();
+    configuration.addCustomFunction(new NamedConstantFnc("UNKNOWN", "named"));
+    configuration.addCustomFunction(new ConstantFnc("unknown", "catch-all"));
+    assertEquals("a {\n  width: 1px;\n  height: named;\n}\n", compiler.compile(LESS, configuration).getCss());
+  }
+
+  @Test
+  public void pureFunctionsEvaluatedOnce() throws Exception {
+    String less = "a { width: counted(1px); height: counted(1px); depth: counted(2px); }";
+    Configuration configuration = new Configuration();
+    CountingFnc pure = new PureCountingFnc();
+    configuration.addCustomFunction(pure);
+    assertEquals("a {\n  width: 1;\n  height: 1;\n  depth: 2;\n}\n", compiler.compile(less, configuration).getCss());
+    // results are remembered also for later compilations
+    assertEquals("a {\n  width: 1;\n  height: 1;\n  depth: 2;\n}\n", compiler.compile(less, configuration).getCss());
+    // and for copies of the configuration
+    assertEquals("a {\n  width: 1;\n  height: 1;\n  depth: 2;\n}\n", compiler.compile(less, new Configuration(configuration)).getCss());
+    assertEquals(2, pure.evaluated);
+
+    configuration = new Configuration();
+    CountingFnc impure = new CountingFnc();
+    configuration.addCustomFunction(impure);
+    assertEquals("a {\n  width: 1;\n  height: 2;\n  depth: 3;\n}\n", compiler.compile(less, configuration).getCss());
+    assertEquals(3, impure.evaluated);
+  }
+
+  @Test
+  public void problemsReportedEachTime() throws Exception {
+    Configuration configuration = new Configuration();
+    configuration.addCustomFunction(new PureCountingFnc());
+    String less = "a { width: counted(warn); height: counted(warn); }";
+    assertEquals(2, countWarnings(compiler.compile(less, configuration), "warning"));
+    assertEquals(2, countWarnings(compiler.compile(less, configuration), "warning"));
+  }
+
+  private int countWarnings(CompilationResult result, String message) {
+    int count = 0;
+    for (Problem warning : result.getWarnings()) {
+      if (message.equals(warning.getMessage()))
+        count++;
+    }
+    return count;
+  }
+
+  private static class PureCountingFnc extends CountingFnc implements PureLessFunction {
+  }
+
+  private static class CountingFnc implements LessFunction {
+
+    protected int evaluated = 0;
+
+    @Override
+    public boolean canEvaluate(FunctionExpression input, List<Expression> parameters) {
+      return input.getName().equals("counted");
+    }
+
+    @Override
+    public Expression evaluate(FunctionExpression input, List<Expression> parameters, Expression evaluatedParameter, LessProblems problems) {
+      evaluated++;
+      if (evaluatedParameter.toString().contains("warn"))
+        problems.addWarning(input, "warning");
+      return new IdentifierExpression(input.getUnderlyingStructure(), String.valueOf(evaluated));
+    }
+
+  }
+
+  private static class NamedConstantFnc extends ConstantFnc implements NamedLessFunction {
+
+    private final String name;
+    private int asked = 0;
+
+    public NamedConstantFnc(String name, String result) {
+      super(name.toLowerCase(), result);
+      this.name = name;
+    }
+
+    @Override
+    public Collection<String> getNames() {
+      return Arrays.asList(name);
+    }
+
+    @Override
+    public boolean canEvaluate(FunctionExpression input, List<Expression> parameters) {
+      asked++;
+      return super.canEvaluate(input, parameters);
+    }
+
+  }
+
+  private static class ConstantFnc implements LessFunction {
+
+    private final String name;
+    private final String result;
+
+    public ConstantFnc(String name, String result) {
+      this.name = name;
+      this.result = result;
+    }
+
+    @Override
+    public boolean canEvaluate(FunctionExpression input, List<Expression> parameters) {
+      return input.getName().equals(name);
+    }
+
+    @Override
+    public Expression evaluate(FunctionExpression input, List<Expression> parameters, Expression evaluatedParameter, LessProblems problems) {
+      return new IdentifierExpression(input.getUnderlyingStructure(), result);
+    }
+
+  }
+
+}
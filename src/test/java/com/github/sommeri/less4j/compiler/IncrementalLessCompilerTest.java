@@ -0,0 +1,136 @@
+package com.github.sommeri.less4j.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.sommeri.less4j.Less4jException;
+import com.github.sommeri.less4j.LessCompiler.CompilationResult;
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessSource;
+import com.github.sommeri.less4j.LessSource.FileSource;
+import com.github.sommeri.less4j.core.BoundedAstCache;
+import com.github.sommeri.less4j.core.IncrementalLessCompiler;
+import com.github.sommeri.less4j.utils.TemporaryFiles;
+
+public class IncrementalLessCompilerTest {
+
+  @Rule
+  public TemporaryFiles folder = new TemporaryFiles();
+
+  private CountingCache cache;
+  private IncrementalLessCompiler compiler;
+  private FileSource first;
+  private FileSource second;
+
+  @Before
+  public void setUp() throws IOException {
+    cache = new CountingCache();
+    compiler = new IncrementalLessCompiler(cache);
+    folder.write("shared.less", "@color: red;");
+    folder.write("leaf.less", ".leaf { color: @color; }");
+    first = new FileSource(folder.write("first.less", "@import \"shared.less\";\n@import \"leaf.less\";\n.first { color: @color; }"));
+    second = new FileSource(folder.write("second.less", "@import \"shared.less\";\n.second { color: @color; }"));
+  }
+
+  @Test
+  public void recompilesOnlyAffectedEntryPoints() throws Exception {
+    compiler.compile(first);
+    compiler.compile(second);
+
+    assertEquals(Arrays.asList(first), compiler.getAffectedEntryPoints(sources("leaf.less")));
+    assertEquals(Arrays.asList(first, second), compiler.getAffectedEntryPoints(sources("shared.less")));
+    assertEquals(Arrays.asList(second), compiler.getAffectedEntryPoints(sources("second.less")));
+  }
+
+  @Test
+  public void parsesOnlyChangedFiles() throws Exception {
+    compiler.compile(first);
+    compiler.compile(second);
+    assertEquals(4, cache.parsed);
+
+    folder.write("leaf.less", ".leaf { background: @color; }");
+    Map<LessSource, CompilationResult> result = compiler.recompile(sources("leaf.less"));
+
+    assertEquals(Collections.singleton(first), result.keySet());
+    assertTrue(result.get(first).getCss().contains("background: red"));
+    assertEquals(5, cache.parsed);
+  }
+
+  @Test
+  public void findsModifiedFiles() throws Exception {
+    compiler.compile(first);
+    assertTrue(compiler.findModifiedSources().isEmpty());
+
+    File leaf = folder.file("leaf.less");
+    leaf.setLastModified(leaf.lastModified() + 10000);
+    List<LessSource> modified = compiler.findModifiedSources();
+    assertEquals(sources("leaf.less"), modified);
+
+    compiler.recompile(modified);
+    assertTrue(compiler.findModifiedSources().isEmpty());
+  }
+
+  @Test
+  public void remembersFailedEntryPoint() throws Exception {
+    folder.write("leaf.less", ".leaf { color: @undefined; }");
+    try {
+      compiler.compile(first);
+      fail("Undefined variable should fail the compilation.");
+    } catch (Less4jException ex) {
+    }
+
+    folder.write("leaf.less", ".leaf { color: blue; }");
+    Map<LessSource, CompilationResult> result = compiler.recompile(sources("leaf.less"));
+    assertTrue(result.get(first).getCss().contains("blue"));
+  }
+
+  @Test
+  public void keepsCallerConfiguration() throws Exception {
+    Configuration configuration = new Configuration();
+    compiler.compile(first, configuration);
+    assertNull(configuration.getCache());
+    assertSame(configuration, compiler.getConfiguration(first));
+    // compiled with the compiler cache anyway
+    assertEquals(3, cache.parsed);
+  }
+
+  @Test
+  public void forgetsStrings() throws Exception {
+    compiler.compile(".a { color: red; }");
+    compiler.compile(new LessSource.StringSource(".b { color: red; }", "named.less"));
+    assertTrue(compiler.getEntryPoints().isEmpty());
+  }
+
+  private List<LessSource> sources(String name) {
+    return Arrays.<LessSource> asList(new FileSource(folder.file(name)));
+  }
+
+
+
+  private static class CountingCache extends BoundedAstCache {
+
+    private int parsed = 0;
+
+    @Override
+    public synchronized void setAst(LessSource key, String content, Object value) {
+      parsed++;
+      super.setAst(key, content, value);
+    }
+
+  }
+
+}
@@ -0,0 +1,98 @@
+package com.github.sommeri.less4j.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.github.sommeri.less4j.core.compiler.scopes.local.KeyValueStorage;
+import com.github.sommeri.less4j.core.compiler.scopes.local.KeyValueStorage.ValuePlaceholder;
+
+public class KeyValueStorageTest {
+
+  @Test
+  public void lastLevelWins() {
+    KeyValueStorage<String, String> storage = new KeyValueStorage<String, String>();
+    storage.add("a", "first");
+    ValuePlaceholder<String, String> placeholder = storage.createPlaceholder();
+    storage.add("a", "above placeholder");
+    assertEquals("above placeholder", storage.getValue("a"));
+
+    // placeholder is below the last level
+    storage.addToFirstPlaceholder("a", "in placeholder");
+    storage.addToFirstPlaceholder("b", "in placeholder");
+    assertEquals("above placeholder", storage.getValue("a"));
+    assertEquals("in placeholder", storage.getValue("b"));
+
+    KeyValueStorage<String, String> replacement = new KeyValueStorage<String, String>();
+    replacement.add("b", "replaced");
+    storage.replacePlaceholder(placeholder, replacement);
+    assertEquals("above placeholder", storage.getValue("a"));
+    assertEquals("replaced", storage.getValue("b"));
+  }
+
+  @Test
+  public void sharedLevelsStayConsistent() {
+    KeyValueStorage<String, String> storage = new KeyValueStorage<String, String>();
+    ValuePlaceholder<String, String> placeholder = storage.createPlaceholder();
+    KeyValueStorage<String, String> replacement = new KeyValueStorage<String, String>();
+    replacement.add("a", "old");
+    storage.replacePlaceholder(placeholder, replacement);
+    assertEquals("old", storage.getValue("a"));
+
+    // levels of replacement are shared, both storages see the change
+    replacement.add("a", "new");
+    replacement.add("b", "new");
+    assertEquals("new", storage.getValue("a"));
+    assertTrue(storage.contains("b"));
+
+    replacement.remove("b");
+    assertFalse(storage.contains("b"));
+  }
+
+  @Test
+  public void clonesAreIndependent() {
+    KeyValueStorage<String, String> storage = new KeyValueStorage<String, String>();
+    storage.add("a", "original");
+    storage.createPlaceholder();
+    KeyValueStorage<String, String> clone = storage.clone();
+
+    clone.add("a", "clone");
+    clone.addToFirstPlaceholder("b", "clone");
+    assertEquals("original", storage.getValue("a"));
+    assertNull(storage.getValue("b"));
+    assertEquals("clone", clone.getValue("a"));
+    assertEquals("clone", clone.getValue("b"));
+
+    storage.remove("a");
+    assertNull(storage.getValue("a"));
+    assertEquals("clone", clone.getValue("a"));
+  }
+
+  @Test
+  public void manyChangesAfterClone() {
+    KeyValueStorage<String, String> storage = new KeyValueStorage<String, String>();
+    for (int i = 0; i < 20; i++) {
+      storage.add("key" + i, "original");
+    }
+    storage.createPlaceholder();
+    assertEquals("original", storage.getValue("key0"));
+
+    KeyValueStorage<String, String> clone = storage.clone();
+    for (int i = 0; i < 100; i++) {
+      clone.add("key" + i, "clone");
+      KeyValueStorage<String, String> nested = clone.clone();
+      nested.addToFirstPlaceholder("nested" + i, "nested");
+      assertEquals("clone", nested.getValue("key" + i));
+      assertEquals("nested", nested.getValue("nested" + i));
+      assertNull(clone.getValue("nested" + i));
+    }
+    for (int i = 0; i < 100; i++) {
+      assertEquals("clone", clone.getValue("key" + i));
+      assertEquals(i < 20 ? "original" : null, storage.getValue("key" + i));
+    }
+  }
+
+}
@@ -0,0 +1,158 @@
+package com.github.sommeri.less4j.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.github.sommeri.less4j.Less4jException;
+import com.github.sommeri.less4j.LessCompiler;
+import com.github.sommeri.less4j.LessCompiler.CompilationResult;
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessCompiler.Problem;
+import com.github.sommeri.less4j.core.DefaultLessCompiler;
+import com.github.sommeri.less4j.utils.CountingFileSource;
+import com.github.sommeri.less4j.utils.TemporaryFiles;
+
+public class PrefetchedImportsTest {
+
+  private static final String importsDir = "src/test/resources/compile-basic-features/import/";
+  private static final String lessJsDir = "src/test/resources/less.js-v1.3.3/less/";
+
+  @Rule
+  public TemporaryFiles folder = new TemporaryFiles();
+
+  private LessCompiler compiler = new DefaultLessCompiler();
+  private ExecutorService pool = Executors.newFixedThreadPool(4);
+  private final AtomicInteger submitted = new AtomicInteger();
+  private Executor executor = new Executor() {
+
+    @Override
+    public void execute(Runnable command) {
+      submitted.incrementAndGet();
+      pool.execute(command);
+    }
+  };
+
+  @After
+  public void shutdown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void importsCompileTheSame() throws Exception {
+    compareAll(importsDir, executor);
+    assertTrue(submitted.get() > 0);
+  }
+
+  @Test
+  public void lessJsCompilesTheSame() throws Exception {
+    compareAll(lessJsDir, executor);
+  }
+
+  @Test
+  public void discardedTasksAreLoadedWhenNeeded() throws Exception {
+    compareAll(importsDir, new Executor() {
+
+      @Override
+      public void execute(Runnable command) {
+        submitted.incrementAndGet();
+      }
+    });
+    assertTrue(submitted.get() > 0);
+  }
+
+  @Test
+  public void rejectedTasksAreLoadedWhenNeeded() throws Exception {
+    compareAll(importsDir, new Executor() {
+
+      @Override
+      public void execute(Runnable command) {
+        submitted.incrementAndGet();
+        throw new RejectedExecutionException();
+      }
+    });
+    assertTrue(submitted.get() > 0);
+  }
+
+  @Test
+  public void sharedImportIsReadOnce() throws Exception {
+    CountingFileSource source = new CountingFileSource(writePartials());
+    compiler.compile(source, new Configuration().setImportExecutor(executor));
+    assertEquals(1, Collections.frequency(source.getRead(), "shared.less"));
+  }
+
+  @Test
+  public void skippedImportsAreNotRead() throws Exception {
+    final List<Runnable> postponed = new ArrayList<Runnable>();
+    // url with variable is not prefetched, prefetched import of the same file is skipped later
+    File main = writePartials();
+    folder.write("main.less", "@name: \"shared\";\n@import \"@{name}\";\n" + FileUtils.readFileToString(main));
+    CountingFileSource source = new CountingFileSource(main);
+    compiler.compile(source, new Configuration().setImportExecutor(new Executor() {
+
+      @Override
+      public void execute(Runnable command) {
+        postponed.add(command);
+      }
+    }));
+    // compiled sheet leaves no work behind, skipped imports were cancelled
+    List<String> read = new ArrayList<String>(source.getRead());
+    for (Runnable command : postponed) {
+      command.run();
+    }
+    assertEquals(read, source.getRead());
+    assertEquals(1, Collections.frequency(source.getRead(), "shared.less"));
+  }
+
+  private File writePartials() throws Exception {
+    folder.write("shared.less", "@color: red;");
+    StringBuilder main = new StringBuilder();
+    for (int i = 0; i < 5; i++) {
+      folder.write("partial" + i + ".less", "@import \"shared\";\n.p" + i + " { color: @color; }");
+      main.append("@import \"partial").append(i).append("\";\n");
+    }
+    return folder.write("main.less", main.toString());
+  }
+
+  private void compareAll(String directory, Executor executor) {
+    Collection<File> files = FileUtils.listFiles(new File(directory), new String[] { "less" }, false);
+    for (File file : files) {
+      assertEquals(file.getName(), compile(file, null), compile(file, executor));
+    }
+  }
+
+  private String compile(File file, Executor executor) {
+    Configuration configuration = new Configuration().setImportExecutor(executor);
+    configuration.setCssResultLocation(new File(file.getPath() + ".css"));
+    try {
+      CompilationResult result = compiler.compile(file, configuration);
+      return result.getCss() + result.getSourceMap() + toString(result.getWarnings());
+    } catch (Less4jException ex) {
+      return "Errors " + toString(ex.getErrors()) + toString(ex.getPartialResult().getWarnings());
+    }
+  }
+
+  private String toString(List<Problem> problems) {
+    StringBuilder result = new StringBuilder();
+    for (Problem problem : problems) {
+      result.append(problem.getType()).append(" ").append(problem.getLine()).append(":").append(problem.getCharacter()).append(" ").append(problem.getMessage()).append("\n");
+    }
+    return result.toString();
+  }
+
+}
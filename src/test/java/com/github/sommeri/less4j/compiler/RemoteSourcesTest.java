@@ -0,0 +1,197 @@
+package com.github.sommeri.less4j.compiler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.sommeri.less4j.LessCompiler;
+import com.github.sommeri.less4j.LessCompiler.Configuration;
+import com.github.sommeri.less4j.LessSource.FileNotFound;
+import com.github.sommeri.less4j.LessSource.ReadCallback;
+import com.github.sommeri.less4j.LessSource.URLSource;
+import com.github.sommeri.less4j.core.DefaultLessCompiler;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves sheets from local http server that answers slowly, like a remote asset service.
+ */
+@SuppressWarnings("restriction")
+public class RemoteSourcesTest {
+
+  private static final int DELAY_MS = 200;
+
+  private final Map<String, byte[]> files = new HashMap<String, byte[]>();
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private HttpServer server;
+  private ExecutorService executor = Executors.newFixedThreadPool(4);
+  private LessCompiler compiler = new DefaultLessCompiler();
+
+  @Before
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/", new HttpHandler() {
+
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int current = running.incrementAndGet();
+        synchronized (maxRunning) {
+          maxRunning.set(Math.max(maxRunning.get(), current));
+        }
+        try {
+          Thread.sleep(DELAY_MS);
+          byte[] body = files.get(exchange.getRequestURI().getPath());
+          if (body == null) {
+            exchange.sendResponseHeaders(404, -1);
+          } else {
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream output = exchange.getResponseBody();
+            output.write(body);
+            output.close();
+          }
+        } catch (InterruptedException ex) {
+          exchange.sendResponseHeaders(500, -1);
+        } finally {
+          running.decrementAndGet();
+          exchange.close();
+        }
+      }
+    });
+    server.start();
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void importsAreDownloadedConcurrently() throws Exception {
+    serve("/theme/main.less", "@import \"a.less\";\n@import \"b.less\";\n@import \"c.less\";\n.main { color: @a; }");
+    serve("/theme/a.less", "@a: red;\n.a { width: 1px; }");
+    serve("/theme/b.less", "@import \"d.less\";\n.b { width: 2px; }");
+    serve("/theme/c.less", ".c { width: 3px; }");
+    serve("/theme/d.less", ".d { width: 4px; }");
+
+    String sequential = compiler.compile(new URLSource(url("/theme/main.less")), new Configuration()).getCss();
+    assertEquals(1, maxRunning.get());
+
+    String concurrent = compiler.compile(new URLSource(url("/theme/main.less")), new Configuration().setImportExecutor(executor)).getCss();
+    assertEquals(sequential, concurrent);
+    assertTrue("imports were not downloaded concurrently", maxRunning.get() > 1);
+  }
+
+  @Test
+  public void dataUriFilesAreDownloadedConcurrently() throws Exception {
+    StringBuilder sheet = new StringBuilder();
+    for (int i = 0; i < 4; i++) {
+      files.put("/theme/image" + i + ".png", new byte[] { (byte) 0x89, 'P', 'N', 'G', (byte) i });
+      sheet.append(".i").append(i).append(" { background: data-uri(\"image").append(i).append(".png\"); }\n");
+    }
+    serve("/theme/main.less", sheet.toString());
+
+    String sequential = compiler.compile(new URLSource(url("/theme/main.less")), new Configuration()).getCss();
+    assertEquals(1, maxRunning.get());
+
+    requests.set(0);
+    String concurrent = compiler.compile(new URLSource(url("/theme/main.less")), new Configuration().setImportExecutor(executor)).getCss();
+    assertEquals(sequential, concurrent);
+    assertTrue("files were not downloaded concurrently", maxRunning.get() > 1);
+    // data-uri used prefetched files
+    assertEquals(5, requests.get());
+  }
+
+  @Test
+  public void asyncReads() throws Exception {
+    byte[] image = new byte[] { (byte) 0x89, 'P', 'N', 'G', (byte) 0xff, 0, (byte) 0xc3 };
+    files.put("/image.png", image);
+    serve("/sheet.less", ".a { color: red; }");
+
+    RecordingCallback<byte[]> bytes = new RecordingCallback<byte[]>();
+    new URLSource(url("/image.png")).getBytesAsync(executor, bytes);
+    assertArrayEquals(image, bytes.await());
+
+    RecordingCallback<String> content = new RecordingCallback<String>();
+    new URLSource(url("/sheet.less")).getContentAsync(executor, content);
+    assertEquals(".a { color: red; }", content.await());
+
+    RecordingCallback<String> missing = new RecordingCallback<String>();
+    new URLSource(url("/missing.less")).getContentAsync(executor, missing);
+    assertNull(missing.await());
+    assertTrue(missing.problem instanceof FileNotFound);
+  }
+
+  @Test
+  public void reads() throws Exception {
+    byte[] image = new byte[] { (byte) 0x89, 'P', 'N', 'G', (byte) 0xff, 0, (byte) 0xc3 };
+    files.put("/image.png", image);
+    serve("/sheet.less", ".a { color: red; }");
+
+    assertArrayEquals(image, new URLSource(url("/image.png")).getBytes());
+    assertEquals(".a { color: red; }", new URLSource(url("/sheet.less")).getContent());
+    try {
+      new URLSource(url("/missing.less")).getContent();
+      fail("Missing source should fail.");
+    } catch (FileNotFound ex) {
+    }
+  }
+
+  private static class RecordingCallback<T> implements ReadCallback<T> {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile T result;
+    private volatile Exception problem;
+
+    @Override
+    public void finished(T result) {
+      this.result = result;
+      done.countDown();
+    }
+
+    @Override
+    public void failed(Exception problem) {
+      this.problem = problem;
+      done.countDown();
+    }
+
+    public T await() throws InterruptedException {
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+      return result;
+    }
+
+  }
+
+  private void serve(String path, String content) throws IOException {
+    files.put(path, content.getBytes("utf-8"));
+  }
+
+  private URL url(String path) throws IOException {
+    return new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+  }
+
+}
@@ -0,0 +1,49 @@
+package com.github.sommeri.less4j.grammar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.github.sommeri.less4j.LessSource.StringSource;
+import com.github.sommeri.less4j.core.parser.ANTLRParser;
+import com.github.sommeri.less4j.core.parser.ANTLRParser.ParseResult;
+import com.github.sommeri.less4j.core.parser.HiddenTokenAwareTree;
+
+/**
+ * Each thread reuses the same lexer and parser, nothing may leak from one parse into the next one.
+ */
+public class ReusedRecognizersTest {
+
+  private ANTLRParser parser = new ANTLRParser();
+
+  @Test
+  public void errorsDoNotLeak() {
+    StringSource faulty = new StringSource(".a { color: red; ", "faulty.less");
+    ParseResult failed = parser.parseStyleSheet(faulty.getContent(), faulty);
+    assertTrue(failed.hasErrors());
+    assertSame(faulty, failed.getErrors().get(0).getSource());
+
+    StringSource correct = new StringSource(".b { color: blue; }\n/* end */", "correct.less");
+    ParseResult parsed = parser.parseStyleSheet(correct.getContent(), correct);
+    assertFalse(parsed.hasErrors());
+    assertSame(correct, parsed.getTree().getSource());
+    assertSame(correct, ((HiddenTokenAwareTree) parsed.getTree().getChild(0)).getSource());
+    assertEquals(1, failed.getErrors().size());
+  }
+
+  @Test
+  public void positionsStartFromBeginning() {
+    StringSource first = new StringSource("\n\n.a {\n color: red;\n}");
+    parser.parseStyleSheet(first.getContent(), first);
+
+    StringSource second = new StringSource(".b { color: blue; }");
+    ParseResult parsed = parser.parseStyleSheet(second.getContent(), second);
+    HiddenTokenAwareTree ruleset = (HiddenTokenAwareTree) parsed.getTree().getChild(0);
+    assertEquals(1, ruleset.getLine());
+    assertEquals(0, ruleset.getCharPositionInLine());
+  }
+
+}
@@ -0,0 +1,43 @@
+package com.github.sommeri.less4j.utils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.sommeri.less4j.LessSource.FileSource;
+
+/**
+ * File source that remembers names of files whose content was read. Imported sources share
+ * the list with the source that imports them, the list may be filled from multiple threads.
+ */
+public class CountingFileSource extends FileSource {
+
+  private final List<String> read;
+
+  public CountingFileSource(File inputFile) {
+    super(inputFile);
+    this.read = Collections.synchronizedList(new ArrayList<String>());
+  }
+
+  private CountingFileSource(CountingFileSource parent, String filename) {
+    super(parent, filename);
+    this.read = parent.read;
+  }
+
+  @Override
+  public String getContent() throws FileNotFound, CannotReadFile {
+    read.add(getName());
+    return super.getContent();
+  }
+
+  @Override
+  public FileSource relativeSource(String filename) {
+    return new CountingFileSource(this, filename);
+  }
+
+  public List<String> getRead() {
+    return read;
+  }
+
+}
@@ -0,0 +1,25 @@
+package com.github.sommeri.less4j.utils;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Temporary folder that writes utf-8 text files into its root. Files with the same name are
+ * overwritten.
+ */
+public class TemporaryFiles extends TemporaryFolder {
+
+  public File file(String name) {
+    return new File(getRoot(), name);
+  }
+
+  public File write(String name, String content) throws IOException {
+    File file = file(name);
+    FileUtils.writeStringToFile(file, content, "utf-8");
+    return file;
+  }
+
+}